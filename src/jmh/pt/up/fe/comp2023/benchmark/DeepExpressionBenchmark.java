@@ -0,0 +1,106 @@
+package pt.up.fe.comp2023.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.ollir.JmmOptimizer;
+import pt.up.fe.comp2023.semantic.AnalysisClass;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Front end over a single expression with a very large number of operators. Runs with the default thread stack,
+// so a phase that recurses once per operator fails with a StackOverflowError instead of giving a score.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeepExpressionBenchmark {
+
+    // chain: x + x - 1 + x - 1 ..., parentheses: ((x + 1) + 1) ... nested, negations: !!! ... b
+    @Param({"chain", "parentheses", "negations"})
+    public String shape;
+
+    @Param({"10000", "100000"})
+    public int operators;
+
+    private final Map<String, String> config = new HashMap<>();
+
+    private String code;
+    private JmmParserResult parserResult;
+    private JmmSemanticsResult semanticsResult;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+
+        code = program(shape, operators);
+        parserResult = new SimpleParser().parse(code, config);
+        if (parserResult.getRootNode() == null) {
+            throw new IllegalStateException("Could not parse the program: " + parserResult.getReports());
+        }
+        semanticsResult = new AnalysisClass().semanticAnalysis(parserResult);
+        if (semanticsResult.getReports().stream().anyMatch(r -> r.getType() == ReportType.ERROR)) {
+            throw new IllegalStateException("The program has semantic errors: " + semanticsResult.getReports());
+        }
+    }
+
+    @Benchmark
+    public JmmParserResult parse() {
+        return new SimpleParser().parse(code, config);
+    }
+
+    @Benchmark
+    public JmmSemanticsResult semanticAnalysis() {
+        return new AnalysisClass().semanticAnalysis(parserResult);
+    }
+
+    @Benchmark
+    public ClassUnit ollirGeneration() {
+        return new JmmOptimizer().toClassUnit(semanticsResult);
+    }
+
+    private static String program(String shape, int operators) {
+        StringBuilder expression = new StringBuilder();
+        String type = "int";
+
+        switch (shape) {
+            case "chain":
+                expression.append("x");
+                for (int i = 0; i < operators; i++) {
+                    expression.append(i % 2 == 0 ? " + x" : " - 1");
+                }
+                break;
+            case "parentheses":
+                expression.append("(".repeat(operators)).append("x");
+                for (int i = 0; i < operators; i++) {
+                    expression.append(" + 1)");
+                }
+                break;
+            case "negations":
+                type = "boolean";
+                expression.append("!".repeat(operators)).append("b");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+
+        return "class Deep {\n"
+                + "    public int f(int x, boolean b) {\n"
+                + "        " + type + " y;\n"
+                + "        y = " + expression + ";\n"
+                + "        return 0;\n"
+                + "    }\n\n"
+                + "    public static void main(String[] args) {\n"
+                + "    }\n"
+                + "}\n";
+    }
+}
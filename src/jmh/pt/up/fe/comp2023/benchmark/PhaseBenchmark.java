@@ -0,0 +1,160 @@
+package pt.up.fe.comp2023.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.comp2023.ollir.JmmOptimizer;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
+import pt.up.fe.comp2023.semantic.AnalysisClass;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// One benchmark per compiler phase. Every phase starts from the results of the previous ones, computed in the
+// setup, and one operation compiles the whole corpus, so the scores of different commits can be compared directly.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+@State(Scope.Benchmark)
+public class PhaseBenchmark {
+
+    // samples: every .jmm file under the test folder, large: generated programs with many, long and deep methods
+    @Param({"samples", "large"})
+    public String corpus;
+
+    private final Map<String, String> config = new HashMap<>();
+
+    private List<String> sources;
+    private List<JmmParserResult> parserResults;
+    private List<JmmSemanticsResult> semanticsResults;
+    private List<String> ollirCodes;
+    private List<ClassUnit> classUnits;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+
+        List<String> programs = corpus.equals("large") ? largePrograms() : samplePrograms();
+
+        sources = new ArrayList<>();
+        parserResults = new ArrayList<>();
+        semanticsResults = new ArrayList<>();
+        ollirCodes = new ArrayList<>();
+
+        // Files that fail a phase are only used in the phases before it
+        for (String code : programs) {
+            JmmParserResult parserResult = new SimpleParser().parse(code, config);
+            if (parserResult.getRootNode() == null) {
+                continue;
+            }
+            sources.add(code);
+
+            JmmSemanticsResult semanticsResult = new AnalysisClass().semanticAnalysis(parserResult);
+            if (semanticsResult.getReports().stream().anyMatch(r -> r.getType() == ReportType.ERROR)) {
+                continue;
+            }
+
+            try {
+                ClassUnit classUnit = new JmmOptimizer().toClassUnit(semanticsResult);
+                String ollirCode = new OllirPrinter(classUnit).getCode();
+                new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
+                new JasminGenerator().toJasmin(classUnit, config);
+                parserResults.add(parserResult);
+                semanticsResults.add(semanticsResult);
+                ollirCodes.add(ollirCode);
+            } catch (RuntimeException e) {
+                // Not supported by the OLLIR parser or the backend
+            }
+        }
+    }
+
+    // The backends add information to the OLLIR classes, so each iteration gets new ones
+    @Setup(Level.Iteration)
+    public void buildClassUnits() {
+        classUnits = semanticsResults.stream()
+                .map(semanticsResult -> new JmmOptimizer().toClassUnit(semanticsResult))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String code : sources) {
+            blackhole.consume(new SimpleParser().parse(code, config));
+        }
+    }
+
+    @Benchmark
+    public void semanticAnalysis(Blackhole blackhole) {
+        for (JmmParserResult parserResult : parserResults) {
+            blackhole.consume(new AnalysisClass().semanticAnalysis(parserResult));
+        }
+    }
+
+    @Benchmark
+    public void ollirGeneration(Blackhole blackhole) {
+        for (JmmSemanticsResult semanticsResult : semanticsResults) {
+            blackhole.consume(new JmmOptimizer().toClassUnit(semanticsResult));
+        }
+    }
+
+    @Benchmark
+    public void ollirParsing(Blackhole blackhole) {
+        for (int i = 0; i < ollirCodes.size(); i++) {
+            blackhole.consume(new OllirResult(semanticsResults.get(i), ollirCodes.get(i), Collections.emptyList()));
+        }
+    }
+
+    @Benchmark
+    public void jasmin(Blackhole blackhole) {
+        for (ClassUnit classUnit : classUnits) {
+            blackhole.consume(new JasminGenerator().toJasmin(classUnit, config));
+        }
+    }
+
+    @Benchmark
+    public void classFile(Blackhole blackhole) {
+        for (ClassUnit classUnit : classUnits) {
+            blackhole.consume(new ClassFileGenerator().toClassFile(classUnit));
+        }
+    }
+
+    private static List<String> samplePrograms() throws IOException {
+        Path root = Paths.get(System.getProperty("jmm.samples", "test"));
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> files = walk.filter(path -> path.toString().endsWith(".jmm")).sorted().collect(Collectors.toList());
+            List<String> programs = new ArrayList<>();
+            for (Path file : files) {
+                programs.add(Files.readString(file));
+            }
+            return programs;
+        }
+    }
+
+    private static List<String> largePrograms() {
+        return List.of(
+                new ProgramGenerator(1).methods(200).statements(10).generate("Wide"),
+                new ProgramGenerator(2).methods(4).statements(250).generate("Long"),
+                new ProgramGenerator(3).methods(4).statements(20).expressionDepth(200).generate("Deep"));
+    }
+}
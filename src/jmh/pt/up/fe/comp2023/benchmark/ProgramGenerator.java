@@ -0,0 +1,277 @@
+package pt.up.fe.comp2023.benchmark;
+
+import java.util.Random;
+
+// Generates valid Java-- programs of any size, following Javamm.g4. The same seed and knobs always give the
+// same program. Generated programs also run: divisions and array indexes use safe literals, every loop has its
+// own counter, and each call passes a smaller 'fuel', checked around the statement that makes it, so the number
+// of calls stays small. The checks only wrap single statements, as the JVM cannot jump over more than 32KB of code.
+public class ProgramGenerator {
+
+    private static final int ARRAY_SIZE = 16;
+    private static final int LOOP_ITERATIONS = 2;
+
+    private final long seed;
+    private int methods = 10;
+    private int statements = 20;
+    private int fields = 4;
+    private int locals = 8;
+    private int nesting = 2;
+    private int expressionDepth = 3;
+    private double callDensity = 0.05;
+
+    private Random random;
+    private StringBuilder code;
+    private int currentMethod;
+    private int loopCounters;
+    private boolean calls;
+
+    public ProgramGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // Number of methods of the class, besides main
+    public ProgramGenerator methods(int methods) {
+        this.methods = Math.max(1, methods);
+        return this;
+    }
+
+    // Number of top level statements in each method
+    public ProgramGenerator statements(int statements) {
+        this.statements = statements;
+        return this;
+    }
+
+    public ProgramGenerator fields(int fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    // Number of int locals of each method, besides the loop counters, a boolean and an array
+    public ProgramGenerator locals(int locals) {
+        this.locals = Math.max(1, locals);
+        return this;
+    }
+
+    // Maximum depth of the if and while statements inside each other
+    public ProgramGenerator nesting(int nesting) {
+        this.nesting = nesting;
+        return this;
+    }
+
+    // Number of operators of each expression. Every operator has a leaf on one side, so the expressions are
+    // chains as deep as this instead of trees with an exponential number of nodes
+    public ProgramGenerator expressionDepth(int expressionDepth) {
+        this.expressionDepth = expressionDepth;
+        return this;
+    }
+
+    // Probability of an int operand being a call to another method of the class
+    public ProgramGenerator callDensity(double callDensity) {
+        this.callDensity = callDensity;
+        return this;
+    }
+
+    public String generate(String className) {
+        random = new Random(seed);
+        code = new StringBuilder();
+
+        code.append("import io;\n\n");
+        code.append("class ").append(className).append(" {\n");
+        for (int f = 0; f < fields; f++) {
+            code.append("    int g").append(f).append(";\n");
+        }
+        code.append("\n");
+
+        for (int m = 0; m < methods; m++) {
+            method(m);
+        }
+
+        code.append("    public static void main(String[] args) {\n");
+        code.append("        ").append(className).append(" program;\n");
+        code.append("        program = new ").append(className).append("();\n");
+        code.append("        io.println(program.m").append(methods - 1).append("(2, 1, 2));\n");
+        code.append("    }\n");
+        code.append("}\n");
+        return code.toString();
+    }
+
+    private void method(int m) {
+        currentMethod = m;
+        loopCounters = 0;
+
+        // Statements are generated first, since they decide how many loop counters are declared
+        StringBuilder classCode = code;
+        code = new StringBuilder();
+        for (int s = 0; s < statements; s++) {
+            statement(2, 0);
+        }
+        String body = code.toString();
+        code = classCode;
+
+        code.append("    public int m").append(m).append("(int fuel, int a, int b) {\n");
+        for (int l = 0; l < locals; l++) {
+            code.append("        int v").append(l).append(";\n");
+        }
+        for (int c = 0; c < loopCounters; c++) {
+            code.append("        int i").append(c).append(";\n");
+        }
+        code.append("        boolean flag;\n");
+        code.append("        int[] array;\n");
+
+        // Every local is assigned before being read, as the JVM verifier requires
+        for (int l = 0; l < locals; l++) {
+            code.append("        v").append(l).append(" = ").append(l).append(";\n");
+        }
+        for (int c = 0; c < loopCounters; c++) {
+            code.append("        i").append(c).append(" = 0;\n");
+        }
+        code.append("        flag = false;\n");
+        code.append("        array = new int[").append(ARRAY_SIZE).append("];\n");
+
+        code.append(body);
+        code.append("        return v0;\n");
+        code.append("    }\n\n");
+    }
+
+    private void statement(int indent, int depth) {
+        int kind = random.nextInt(depth < nesting ? 8 : 6);
+        calls = false;
+        switch (kind) {
+            case 0:
+            case 1:
+                guarded(indent, intLocal() + " = " + intExpression(0) + ";");
+                break;
+            case 2:
+                guarded(indent, "array[" + random.nextInt(ARRAY_SIZE) + "] = " + intExpression(0) + ";");
+                break;
+            case 3:
+                guarded(indent, "flag = " + booleanExpression(0) + ";");
+                break;
+            case 4:
+                if (fields > 0) {
+                    guarded(indent, "g" + random.nextInt(fields) + " = " + intExpression(0) + ";");
+                } else {
+                    guarded(indent, intLocal() + " = " + intExpression(0) + ";");
+                }
+                break;
+            case 5:
+                guarded(indent, "io.println(" + intExpression(0) + ");");
+                break;
+            case 6:
+                // Conditions have no calls, so the branches are never inside a fuel check
+                double density = callDensity;
+                callDensity = 0;
+                line(indent, "if (" + booleanExpression(0) + ") {");
+                callDensity = density;
+                block(indent + 1, depth + 1);
+                line(indent, "} else {");
+                block(indent + 1, depth + 1);
+                line(indent, "}");
+                break;
+            default:
+                String counter = "i" + loopCounters++;
+                line(indent, counter + " = 0;");
+                line(indent, "while (" + counter + " < " + LOOP_ITERATIONS + ") {");
+                block(indent + 1, depth + 1);
+                line(indent + 1, counter + " = " + counter + " + 1;");
+                line(indent, "}");
+        }
+    }
+
+    private void guarded(int indent, String statement) {
+        if (!calls) {
+            line(indent, statement);
+            return;
+        }
+        line(indent, "if (0 < fuel) {");
+        line(indent + 1, statement);
+        line(indent, "} else {");
+        line(indent, "}");
+    }
+
+    private void block(int indent, int depth) {
+        int count = 1 + random.nextInt(3);
+        for (int s = 0; s < count; s++) {
+            statement(indent, depth);
+        }
+    }
+
+    private String intExpression(int depth) {
+        if (depth >= expressionDepth) {
+            return intOperand();
+        }
+
+        switch (random.nextInt(6)) {
+            case 0:
+                return intExpression(depth + 1) + " + " + intOperand();
+            case 1:
+                return intOperand() + " - " + intExpression(depth + 1);
+            case 2:
+                return intExpression(depth + 1) + " * " + intOperand();
+            case 3:
+                return "(" + intExpression(depth + 1) + ") / " + (1 + random.nextInt(9));
+            case 4:
+                return "(" + intOperand() + " + " + intExpression(depth + 1) + ")";
+            default:
+                return "array[" + random.nextInt(ARRAY_SIZE) + "] + " + intExpression(depth + 1);
+        }
+    }
+
+    private String intOperand() {
+        if (currentMethod > 0 && random.nextDouble() < callDensity) {
+            int callee = random.nextInt(currentMethod);
+            calls = true;
+            // Arguments are never calls themselves, so the program grows linearly with the call density
+            return "this.m" + callee + "(fuel - 1, " + intLeaf() + ", " + intLeaf() + ")";
+        }
+        return intLeaf();
+    }
+
+    private String intLeaf() {
+        switch (random.nextInt(7)) {
+            case 0:
+                return String.valueOf(random.nextInt(100));
+            case 1:
+                return "a";
+            case 2:
+                return "b";
+            case 3:
+                return "array.length";
+            case 4:
+                return fields > 0 ? "g" + random.nextInt(fields) : "a";
+            default:
+                return intLocal();
+        }
+    }
+
+    private String booleanExpression(int depth) {
+        if (depth >= expressionDepth) {
+            return random.nextBoolean() ? "flag" : intOperand() + " < " + intOperand();
+        }
+
+        switch (random.nextInt(5)) {
+            case 0:
+                return intExpression(depth + 1) + " < " + intOperand();
+            case 1:
+                return intOperand() + " > " + intExpression(depth + 1);
+            case 2:
+                return booleanExpression(depth + 1) + " && flag";
+            case 3:
+                return "!(" + booleanExpression(depth + 1) + ")";
+            default:
+                return "flag || " + booleanExpression(depth + 1);
+        }
+    }
+
+    private String intLocal() {
+        return "v" + random.nextInt(locals);
+    }
+
+    private void line(int indent, String text) {
+        for (int i = 0; i < indent; i++) {
+            code.append("    ");
+        }
+        code.append(text).append("\n");
+    }
+}
@@ -0,0 +1,174 @@
+package pt.up.fe.comp2023.benchmark;
+
+import pt.up.fe.comp2023.CompilationStats;
+import pt.up.fe.comp2023.JmmCompiler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Compiles generated programs of increasing size, growing one knob of the generator at a time, and reports how
+// the time and allocation of each phase grow with it. The growth exponent is the slope of the log-log fit: about
+// 1 for a phase linear in the knob, so a phase above SUPERLINEAR is marked. Knobs such as the number of locals
+// barely change the number of AST nodes, so the fit is against the knob and not the nodes, and only over the
+// larger half of the sizes, as the smaller ones are dominated by the parts of the program that do not grow.
+// The results are also written as CSV, one line per shape, size and phase, ready to be plotted.
+public class ScalingReport {
+
+    private static final long SEED = 2023;
+    private static final int WARMUP = 3;
+    private static final int REPETITIONS = 5;
+    private static final double SUPERLINEAR = 1.25;
+
+    private record Shape(String name, int[] sizes, IntFunction<ProgramGenerator> generator) {
+    }
+
+    private record Sample(int size, long astNodes, Map<String, CompilationStats.Phase> phases) {
+    }
+
+    private static final List<Shape> SHAPES = List.of(
+            new Shape("statements per method", new int[]{125, 250, 500, 1000, 2000, 4000},
+                    size -> new ProgramGenerator(SEED).methods(1).statements(size)),
+            new Shape("methods", new int[]{25, 50, 100, 200, 400, 800},
+                    size -> new ProgramGenerator(SEED).methods(size).statements(10)),
+            new Shape("fields", new int[]{25, 50, 100, 200, 400, 800},
+                    size -> new ProgramGenerator(SEED).methods(4).statements(50).fields(size)),
+            new Shape("locals", new int[]{25, 50, 100, 200, 400, 800},
+                    size -> new ProgramGenerator(SEED).methods(2).statements(100).locals(size)),
+            new Shape("expression depth", new int[]{25, 50, 100, 200, 400, 800},
+                    size -> new ProgramGenerator(SEED).methods(1).statements(10).expressionDepth(size)),
+            new Shape("call density", new int[]{0, 10, 20, 30, 40},
+                    size -> new ProgramGenerator(SEED).methods(20).statements(50).callDensity(size / 100.0)));
+
+    public static void main(String[] args) throws IOException {
+        Path output = Paths.get(args.length > 0 ? args[0] : "scaling.csv");
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("stats", "true");
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output))) {
+            csv.println("shape,size,ast_nodes,phase,wall_ms,allocated_mb");
+
+            for (Shape shape : SHAPES) {
+                List<Sample> samples = new ArrayList<>();
+                for (int size : shape.sizes()) {
+                    String code = shape.generator().apply(size).generate("Scaling");
+                    Sample sample;
+                    try {
+                        sample = measure(code, size, config);
+                    } catch (RuntimeException | StackOverflowError e) {
+                        System.out.println(shape.name() + " = " + size + ": failed with " + e);
+                        break;
+                    }
+                    samples.add(sample);
+                    for (var phase : sample.phases().entrySet()) {
+                        csv.printf("%s,%d,%d,%s,%.3f,%.3f%n", shape.name(), size, sample.astNodes(), phase.getKey(),
+                                phase.getValue().wallNanos() / 1e6, phase.getValue().allocatedBytes() / 1e6);
+                    }
+                }
+                print(shape, samples);
+            }
+        }
+
+        System.out.println("CSV written to " + output.toAbsolutePath());
+    }
+
+    // Best of several compilations of the same program, after a few to warm up the JIT
+    private static Sample measure(String code, int size, Map<String, String> config) {
+        JmmCompiler compiler = new JmmCompiler();
+        Map<String, CompilationStats.Phase> best = new LinkedHashMap<>();
+        long astNodes = 0;
+
+        for (int i = 0; i < WARMUP + REPETITIONS; i++) {
+            JmmCompiler.Result result = compiler.compile("Scaling", code, config);
+            if (result.hasErrors()) {
+                throw new RuntimeException("the generated program does not compile: " + result.reports());
+            }
+            if (i < WARMUP) {
+                continue;
+            }
+            astNodes = result.stats().getCounters().getOrDefault("ast nodes", 0L);
+            result.stats().getPhases().forEach((phase, measured) -> best.merge(phase, measured,
+                    (a, b) -> new CompilationStats.Phase(Math.min(a.wallNanos(), b.wallNanos()), Math.min(a.cpuNanos(), b.cpuNanos()),
+                            Math.min(a.allocatedBytes(), b.allocatedBytes()))));
+        }
+
+        return new Sample(size, astNodes, best);
+    }
+
+    private static void print(Shape shape, List<Sample> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        List<String> phases = new ArrayList<>(samples.get(samples.size() - 1).phases().keySet());
+
+        System.out.println();
+        System.out.println("== " + shape.name());
+        StringBuilder header = new StringBuilder(String.format("%8s %10s", "size", "ast nodes"));
+        for (String phase : phases) {
+            header.append(String.format(" %22s", phase + " ms/MB"));
+        }
+        System.out.println(header);
+
+        for (Sample sample : samples) {
+            StringBuilder row = new StringBuilder(String.format("%8d %10d", sample.size(), sample.astNodes()));
+            for (String phase : phases) {
+                CompilationStats.Phase measured = sample.phases().get(phase);
+                row.append(measured == null ? String.format(" %22s", "-")
+                        : String.format(" %13.2f/%8.1f", measured.wallNanos() / 1e6, measured.allocatedBytes() / 1e6));
+            }
+            System.out.println(row);
+        }
+
+        StringBuilder exponents = new StringBuilder(String.format("%19s", "growth exponent"));
+        for (String phase : phases) {
+            double time = exponent(samples, phase, false);
+            double memory = exponent(samples, phase, true);
+            String mark = time > SUPERLINEAR || memory > SUPERLINEAR ? " !" : "  ";
+            exponents.append(String.format(" %11.2f/%8.2f%s", time, memory, mark).substring(0, 23));
+        }
+        System.out.println(exponents);
+    }
+
+    // Least squares slope of log(cost) over log(size)
+    private static double exponent(List<Sample> samples, String phase, boolean memory) {
+        List<double[]> points = new ArrayList<>();
+        for (Sample sample : samples.subList(samples.size() / 2, samples.size())) {
+            CompilationStats.Phase measured = sample.phases().get(phase);
+            if (measured == null) {
+                continue;
+            }
+            double cost = memory ? measured.allocatedBytes() : measured.wallNanos();
+            if (cost > 0 && sample.size() > 0) {
+                points.add(new double[]{Math.log(sample.size()), Math.log(cost)});
+            }
+        }
+        if (points.size() < 2) {
+            return Double.NaN;
+        }
+
+        double meanX = points.stream().mapToDouble(p -> p[0]).average().orElse(0);
+        double meanY = points.stream().mapToDouble(p -> p[1]).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+        for (double[] point : points) {
+            covariance += (point[0] - meanX) * (point[1] - meanY);
+            variance += (point[0] - meanX) * (point[0] - meanX);
+        }
+        return variance == 0 ? Double.NaN : covariance / variance;
+    }
+}
@@ -0,0 +1,54 @@
+package pt.up.fe.comp2023.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.semantic.AnalysisClass;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Semantic analysis of classes of growing size, with the methods checked on the calling thread (sequential) or in
+// fork-join tasks (parallel). The sizes where parallel starts to win give the parallelChildren threshold; the
+// children of the smallest class are about 80 statements and declarations, those of the largest about 8000.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SemanticAnalysisBenchmark {
+
+    @Param({"2", "4", "8", "16", "50", "200"})
+    public int methods;
+
+    @Param({"10", "50"})
+    public int statements;
+
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    private JmmParserResult parserResult;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("parallelChildren", mode.equals("parallel") ? "0" : String.valueOf(Integer.MAX_VALUE));
+
+        String code = new ProgramGenerator(1).methods(methods).statements(statements).generate("Analysis");
+        parserResult = new SimpleParser().parse(code, config);
+        if (parserResult.getRootNode() == null) {
+            throw new IllegalStateException("Could not parse the program: " + parserResult.getReports());
+        }
+    }
+
+    @Benchmark
+    public JmmSemanticsResult semanticAnalysis() {
+        return new AnalysisClass().semanticAnalysis(parserResult);
+    }
+}
@@ -0,0 +1,179 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2023.cache.StageCache;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Compiles many .jmm files in the same JVM, one task per file, on a work-stealing pool sized to the cores.
+public class BatchCompiler {
+
+    public record FileStatus(Path file, boolean success, int errors, long timeMillis, String message, CompilationStats stats) {
+
+        @Override
+        public String toString() {
+            String status = success ? "OK" : "FAILED";
+            String line = status + " " + file + " (" + timeMillis + " ms)";
+            if (message != null) {
+                line += ": " + message;
+            }
+            if (stats != null) {
+                line += "\n" + stats;
+            }
+            return line;
+        }
+    }
+
+    private final Map<String, String> config;
+    private final Path outputDir;
+    private final int parallelism;
+
+    public BatchCompiler(Map<String, String> config) {
+        this.config = config;
+        this.outputDir = Paths.get(config.getOrDefault("outputDir", "."));
+        this.parallelism = Integer.parseInt(config.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    // Each input is either a directory (searched recursively for .jmm files), a glob such as 'tests/**.jmm',
+    // a file with one path per line prefixed by '@', or a plain .jmm file
+    public static List<Path> resolveInputs(List<String> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        for (String input : inputs) {
+            if (input.startsWith("@")) {
+                for (String line : Files.readAllLines(Paths.get(input.substring(1)))) {
+                    if (!line.isBlank()) {
+                        files.add(Paths.get(line.trim()));
+                    }
+                }
+            } else if (input.contains("*") || input.contains("?") || input.contains("{")) {
+                files.addAll(expandGlob(input));
+            } else if (Files.isDirectory(Paths.get(input))) {
+                try (Stream<Path> walk = Files.walk(Paths.get(input))) {
+                    files.addAll(walk.filter(p -> p.toString().endsWith(".jmm")).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(Paths.get(input));
+            }
+        }
+
+        return files;
+    }
+
+    private static List<Path> expandGlob(String glob) throws IOException {
+        // Walk from the longest prefix of the pattern that has no wildcards
+        int firstWildcard = glob.length();
+        for (char c : new char[]{'*', '?', '{', '['}) {
+            int index = glob.indexOf(c);
+            if (index != -1) {
+                firstWildcard = Math.min(firstWildcard, index);
+            }
+        }
+        int lastSeparator = glob.lastIndexOf('/', firstWildcard);
+        Path root = lastSeparator == -1 ? Paths.get(".") : Paths.get(glob.substring(0, lastSeparator + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(lastSeparator == -1 ? root.relativize(p) : p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public List<FileStatus> compileAll(List<Path> files) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        JmmCompiler compiler = new JmmCompiler(config.containsKey("cache") ? StageCache.fromConfig(config) : null);
+
+        try {
+            List<Callable<FileStatus>> tasks = files.stream()
+                    .map(file -> (Callable<FileStatus>) () -> compileFile(compiler, file))
+                    .collect(Collectors.toList());
+
+            // Results keep the order of the inputs, independently of the order in which they finished
+            List<FileStatus> statuses = new ArrayList<>();
+            List<Future<FileStatus>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    statuses.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    statuses.add(new FileStatus(files.get(i), false, 1, 0, e.getCause().toString(), null));
+                }
+            }
+            return statuses;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private FileStatus compileFile(JmmCompiler compiler, Path file) {
+        long start = System.nanoTime();
+
+        try {
+            String code = SpecsIo.read(file.toFile());
+            JmmCompiler.Result result = compiler.compile(file.toString(), code, config);
+            long time = (System.nanoTime() - start) / 1_000_000;
+
+            List<Report> errors = result.reports().stream()
+                    .filter(r -> r.getType() == ReportType.ERROR)
+                    .collect(Collectors.toList());
+            if (result.hasErrors()) {
+                String message = errors.isEmpty() ? "no code generated" : errors.get(0).getMessage();
+                return new FileStatus(file, false, errors.size(), time, message, result.stats());
+            }
+
+            if (!"true".equals(config.get("debug"))) {
+                String fileName = file.getFileName().toString();
+                Files.createDirectories(outputDir);
+                Files.writeString(outputDir.resolve(fileName.split("\\.")[0] + ".j"), result.jasminResult().getJasminCode());
+            }
+
+            return new FileStatus(file, true, 0, time, null, result.stats());
+        } catch (Exception e) {
+            long time = (System.nanoTime() - start) / 1_000_000;
+            return new FileStatus(file, false, 1, time, e.toString(), null);
+        }
+    }
+
+    public int run(List<String> inputs) throws IOException, InterruptedException {
+        List<Path> files = resolveInputs(inputs);
+        long start = System.nanoTime();
+
+        List<FileStatus> statuses = compileAll(files);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long failed = statuses.stream().filter(s -> !s.success()).count();
+
+        for (FileStatus status : statuses) {
+            if (status.stats() != null && config.get("stats").equals("json")) {
+                System.out.println(new FileStatus(status.file(), status.success(), status.errors(), status.timeMillis(), status.message(), null));
+                System.out.println(status.stats().toJson());
+            } else {
+                System.out.println(status);
+            }
+        }
+
+        System.out.println();
+        System.out.println("Compiled " + statuses.size() + " files (" + (statuses.size() - failed) + " ok, " + failed + " failed) in "
+                + String.format("%.3f", seconds) + " s using " + parallelism + " threads, "
+                + String.format("%.1f", seconds > 0 ? statuses.size() / seconds : 0.0) + " files/s");
+
+        return failed == 0 ? 0 : 1;
+    }
+}
@@ -0,0 +1,174 @@
+package pt.up.fe.comp2023;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Wall time, CPU time and allocated bytes of each phase of one compilation unit, plus counters such as AST nodes.
+// The stats of the unit being compiled are kept per thread, so the stages can record their phases without
+// changing their interfaces, and nothing is measured when no compilation is being recorded on the thread.
+public class CompilationStats {
+
+    public record Phase(long wallNanos, long cpuNanos, long allocatedBytes) {
+
+        Phase plus(Phase other) {
+            return new Phase(wallNanos + other.wallNanos, cpuNanos + other.cpuNanos, allocatedBytes + other.allocatedBytes);
+        }
+    }
+
+    private static final ThreadLocal<CompilationStats> CURRENT = new ThreadLocal<>();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String unitName;
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    // Phase being measured on the thread that started recording, which the tasks it runs on other threads add to
+    private String currentPhase;
+
+    public CompilationStats(String unitName) {
+        this.unitName = unitName;
+    }
+
+    // Starts recording on the current thread, until stop is called
+    public static CompilationStats start(String unitName) {
+        CompilationStats stats = new CompilationStats(unitName);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    public static boolean isRecording() {
+        return CURRENT.get() != null;
+    }
+
+    public static <T> T measure(String phase, Supplier<T> action) {
+        CompilationStats stats = CURRENT.get();
+        if (stats == null) {
+            return action.get();
+        }
+
+        long wall = System.nanoTime();
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+
+        String outerPhase = stats.currentPhase;
+        stats.currentPhase = phase;
+        T result;
+        try {
+            result = action.get();
+        } finally {
+            stats.currentPhase = outerPhase;
+        }
+
+        stats.add(phase, new Phase(System.nanoTime() - wall, cpuTime() - cpu, allocatedBytes() - allocated));
+        return result;
+    }
+
+    // CPU time and allocation are only measured on the thread that calls measure, so an action the phase hands to
+    // another thread must be wrapped with this to be counted. Its wall time is not added, since the phase waits for it
+    public static <T> Supplier<T> task(Supplier<T> action) {
+        CompilationStats stats = CURRENT.get();
+        if (stats == null || stats.currentPhase == null) {
+            return action;
+        }
+
+        String phase = stats.currentPhase;
+        Thread caller = Thread.currentThread();
+        return () -> {
+            if (Thread.currentThread() == caller) {
+                return action.get();
+            }
+
+            long cpu = cpuTime();
+            long allocated = allocatedBytes();
+            try {
+                return action.get();
+            } finally {
+                stats.add(phase, new Phase(0, cpuTime() - cpu, allocatedBytes() - allocated));
+            }
+        };
+    }
+
+    public static void count(String counter, long amount) {
+        CompilationStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.counters.merge(counter, amount, Long::sum);
+        }
+    }
+
+    // Tasks of the same phase may finish on several threads at once
+    private synchronized void add(String phase, Phase measured) {
+        phases.merge(phase, measured, Phase::plus);
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    public Map<String, Phase> getPhases() {
+        return phases;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        text.append("Stats for ").append(unitName).append("\n");
+        text.append(String.format("  %-18s %12s %12s %14s%n", "phase", "wall (ms)", "cpu (ms)", "allocated (KB)"));
+
+        Phase total = new Phase(0, 0, 0);
+        for (var entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            text.append(String.format("  %-18s %12.3f %12.3f %14d%n", entry.getKey(),
+                    phase.wallNanos() / 1e6, phase.cpuNanos() / 1e6, phase.allocatedBytes() / 1024));
+            total = total.plus(phase);
+        }
+        text.append(String.format("  %-18s %12.3f %12.3f %14d%n", "total",
+                total.wallNanos() / 1e6, total.cpuNanos() / 1e6, total.allocatedBytes() / 1024));
+
+        for (var entry : counters.entrySet()) {
+            text.append(String.format("  %-18s %12d%n", entry.getKey(), entry.getValue()));
+        }
+
+        return text.toString();
+    }
+
+    public String toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("unit", unitName);
+
+        JsonObject jsonPhases = new JsonObject();
+        for (var entry : phases.entrySet()) {
+            JsonObject jsonPhase = new JsonObject();
+            jsonPhase.addProperty("wallNanos", entry.getValue().wallNanos());
+            jsonPhase.addProperty("cpuNanos", entry.getValue().cpuNanos());
+            jsonPhase.addProperty("allocatedBytes", entry.getValue().allocatedBytes());
+            jsonPhases.add(entry.getKey(), jsonPhase);
+        }
+        json.add("phases", jsonPhases);
+
+        JsonObject jsonCounters = new JsonObject();
+        counters.forEach(jsonCounters::addProperty);
+        json.add("counters", jsonCounters);
+
+        return new GsonBuilder().create().toJson(json);
+    }
+}
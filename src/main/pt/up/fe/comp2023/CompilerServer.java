@@ -0,0 +1,247 @@
+package pt.up.fe.comp2023;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.cache.StageCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-running compiler that keeps the JVM (parser tables, JIT) warm between compilations.
+// The protocol is one JSON object per line in both directions:
+//   request:  {"code": "...", "config": {"optimize": "true", ...}}
+//   response: {"success": true, "className": "...", "jasmin": "...", "reports": ["..."]}
+// A request {"command": "shutdown"} stops the server.
+public class CompilerServer {
+
+    // Small program that goes through every stage, used to warm the server before accepting requests
+    private static final String WARMUP_CODE = "import io;\n" +
+            "class Warmup {\n" +
+            "    int field;\n" +
+            "    public int sum(int[] a, int n) {\n" +
+            "        int i;\n" +
+            "        int acc;\n" +
+            "        i = 0;\n" +
+            "        acc = 0;\n" +
+            "        while (i < n) {\n" +
+            "            if (!(a[i] < 0) && true) { acc = acc + a[i] * 2; } else { acc = acc - 1; }\n" +
+            "            i = i + 1;\n" +
+            "        }\n" +
+            "        return acc;\n" +
+            "    }\n" +
+            "    public static void main(String[] args) {\n" +
+            "        int[] a;\n" +
+            "        Warmup w;\n" +
+            "        a = new int[10];\n" +
+            "        w = new Warmup();\n" +
+            "        io.println(w.sum(a, a.length));\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final int WARMUP_ITERATIONS = 50;
+
+    private final Gson gson = new Gson();
+    private final JmmCompiler compiler;
+    private final Map<String, String> defaultConfig;
+    private final ExecutorService workers;
+    private volatile boolean running;
+    private ServerSocketChannel server;
+
+    public CompilerServer(Map<String, String> defaultConfig) {
+        this.defaultConfig = defaultConfig;
+        this.compiler = new JmmCompiler(defaultConfig.containsKey("cache") ? StageCache.fromConfig(defaultConfig) : null);
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    // 'unix:/path/to/socket' binds a Unix domain socket, a plain number binds that TCP port on the loopback interface
+    public static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+    }
+
+    public void warmup() {
+        Map<String, String> config = new HashMap<>(defaultConfig);
+        config.put("debug", "true");
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            compiler.compile(WARMUP_CODE, config);
+        }
+    }
+
+    public void serve(SocketAddress address) throws IOException {
+        boolean isUnix = address instanceof UnixDomainSocketAddress;
+        if (isUnix) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(isUnix ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET)) {
+            this.server = server;
+            server.bind(address);
+            running = true;
+            System.out.println("Compiler server listening on " + address);
+
+            while (running) {
+                SocketChannel client = server.accept();
+                workers.submit(() -> handle(client));
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by a shutdown request
+            if (running) {
+                throw e;
+            }
+        } finally {
+            workers.shutdown();
+            if (isUnix) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             var writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                JsonObject response = handleRequest(line);
+                writer.write(gson.toJson(response));
+                writer.newLine();
+                writer.flush();
+
+                if (!running) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Connection closed: " + e.getMessage());
+        }
+    }
+
+    JsonObject handleRequest(String line) {
+        JsonObject response = new JsonObject();
+
+        JsonObject request;
+        try {
+            request = gson.fromJson(line, JsonObject.class);
+        } catch (JsonParseException e) {
+            response.addProperty("success", false);
+            response.addProperty("error", "Invalid request: " + e.getMessage());
+            return response;
+        }
+
+        if (request.has("command") && request.get("command").getAsString().equals("shutdown")) {
+            running = false;
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Could not close server: " + e.getMessage());
+            }
+            response.addProperty("success", true);
+            return response;
+        }
+
+        if (!request.has("code")) {
+            response.addProperty("success", false);
+            response.addProperty("error", "Missing 'code' in request");
+            return response;
+        }
+
+        Map<String, String> config = new HashMap<>(defaultConfig);
+        if (request.has("config")) {
+            for (var entry : request.getAsJsonObject("config").entrySet()) {
+                config.put(entry.getKey(), entry.getValue().getAsString());
+            }
+        }
+
+        JmmCompiler.Result result;
+        try {
+            result = compiler.compile(request.get("code").getAsString(), config);
+        } catch (RuntimeException e) {
+            response.addProperty("success", false);
+            response.addProperty("error", e.toString());
+            return response;
+        }
+
+        JsonArray reports = new JsonArray();
+        for (Report report : result.reports()) {
+            reports.add(report.toString());
+        }
+
+        response.addProperty("success", !result.hasErrors());
+        if (result.jasminResult() != null) {
+            response.addProperty("className", result.jasminResult().getClassName());
+            response.addProperty("jasmin", result.jasminResult().getJasminCode());
+        }
+        response.add("reports", reports);
+        if (result.stats() != null) {
+            response.add("stats", gson.fromJson(result.stats().toJson(), JsonObject.class));
+        }
+
+        return response;
+    }
+
+    // Thin client: sends one file to a running server and writes the returned Jasmin next to the working directory
+    public static int sendFile(String address, Path inputFile, Map<String, String> config) throws IOException {
+        SocketAddress socketAddress = parseAddress(address);
+        boolean isUnix = socketAddress instanceof UnixDomainSocketAddress;
+        Gson gson = new Gson();
+
+        JsonObject request = new JsonObject();
+        request.addProperty("code", Files.readString(inputFile));
+        JsonObject requestConfig = new JsonObject();
+        config.forEach(requestConfig::addProperty);
+        request.add("config", requestConfig);
+
+        try (SocketChannel channel = SocketChannel.open(isUnix ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET)) {
+            channel.connect(socketAddress);
+            var writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+            writer.write(gson.toJson(request));
+            writer.newLine();
+            writer.flush();
+
+            JsonObject response = gson.fromJson(reader.readLine(), JsonObject.class);
+            if (response.has("reports")) {
+                response.getAsJsonArray("reports").forEach(r -> System.out.println(r.getAsString()));
+            }
+            if (response.has("error")) {
+                System.err.println(response.get("error").getAsString());
+            }
+            if (response.has("jasmin")) {
+                String fileName = inputFile.getFileName().toString();
+                Files.writeString(Path.of(fileName.split("\\.")[0] + ".j"), response.get("jasmin").getAsString());
+            }
+
+            return response.get("success").getAsBoolean() ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package pt.up.fe.comp2023;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2023.cache.StageCache;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.comp2023.ollir.JmmOptimizer;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
+import pt.up.fe.comp2023.semantic.AnalysisClass;
+import pt.up.fe.comp2023.semantic.Identifiers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Runs every stage of the compiler for a single compilation unit, without printing anything.
+// Every stage is instantiated per call, so the same JmmCompiler can be used from several threads.
+public class JmmCompiler {
+
+    // stats is null unless the 'stats' option is set
+    public record Result(JasminResult jasminResult, List<Report> reports, CompilationStats stats) {
+
+        public boolean hasErrors() {
+            return jasminResult == null || reports.stream().anyMatch(r -> r.getType() == ReportType.ERROR);
+        }
+    }
+
+    // Null when the compilation results are not cached
+    private final StageCache cache;
+
+    public JmmCompiler() {
+        this(null);
+    }
+
+    public JmmCompiler(StageCache cache) {
+        this.cache = cache;
+    }
+
+    public Result compile(String code, Map<String, String> config) {
+        return compile("<input>", code, config);
+    }
+
+    // Each compilation interns its names in its own scope, dropped once its result is built
+    public Result compile(String unitName, String code, Map<String, String> config) {
+        if (!config.containsKey("stats")) {
+            return Identifiers.scoped(() -> runStages(code, config, null));
+        }
+
+        CompilationStats stats = CompilationStats.start(unitName);
+        try {
+            return Identifiers.scoped(() -> runStages(code, config, stats));
+        } finally {
+            CompilationStats.stop();
+        }
+    }
+
+    private Result runStages(String code, Map<String, String> config, CompilationStats stats) {
+        String sourceKey = null;
+        if (cache != null) {
+            sourceKey = cache.sourceKey(code, config);
+            String key = sourceKey;
+            Optional<StageCache.Entry> entry = CompilationStats.measure("cache lookup", () -> cache.getSource(key));
+            if (entry.isPresent()) {
+                JasminResult jasminResult = new JasminResult(entry.get().className(), entry.get().jasminCode(), entry.get().reports(), config);
+                return new Result(jasminResult, entry.get().reports(), stats);
+            }
+        }
+
+        List<Report> reports = new ArrayList<>();
+
+        // Parse stage
+        JmmParserResult parserResult = CompilationStats.measure("parse", () -> new SimpleParser().parse(code, config));
+        reports.addAll(parserResult.getReports());
+        if (parserResult.getRootNode() == null) {
+            return new Result(null, reports, stats);
+        }
+        if (stats != null) {
+            CompilationStats.count("ast nodes", countNodes(parserResult.getRootNode()));
+        }
+
+        // Analysis stage
+        JmmSemanticsResult semanticsResult = new AnalysisClass().semanticAnalysis(parserResult);
+        if (semanticsResult.getReports().stream().anyMatch(r -> r.getType() == ReportType.ERROR)) {
+            reports.addAll(semanticsResult.getReports());
+            return new Result(null, reports, stats);
+        }
+
+        // The optimized result also has the reports of the analysis, and logs what the optimizations removed
+        JmmOptimizer optimizer = new JmmOptimizer();
+        if ("true".equals(config.get("optimize"))) {
+            JmmSemanticsResult unoptimized = semanticsResult;
+            semanticsResult = CompilationStats.measure("ast optimization", () -> optimizer.optimize(unoptimized));
+        }
+        reports.addAll(semanticsResult.getReports());
+
+        // Ollir stage, the OLLIR text is only printed when it is needed as a cache key
+        ClassUnit classUnit = optimizer.toClassUnit(semanticsResult);
+        optimizer.optimize(classUnit, config);
+        String ollirCode = cache != null ? new OllirPrinter(classUnit).getCode() : null;
+        List<Report> allocationReports = optimizer.allocateRegisters(classUnit, config);
+        reports.addAll(allocationReports);
+        // A method that does not fit in the registers allowed has no code to generate
+        if (allocationReports.stream().anyMatch(r -> r.getType() == ReportType.ERROR)) {
+            return new Result(null, reports, stats);
+        }
+
+        // Jasmin stage, skipped when the same OLLIR was already compiled
+        JasminResult jasminResult;
+        String backendKey = cache != null ? cache.backendKey(ollirCode, config) : null;
+        Optional<String> cachedJasmin = cache != null ? cache.getBackend(backendKey) : Optional.empty();
+        if (cachedJasmin.isPresent()) {
+            jasminResult = new JasminResult(classUnit.getClassName(), cachedJasmin.get(), Collections.emptyList(), config);
+        } else {
+            jasminResult = new JasminGenerator().toJasmin(classUnit, config);
+            if (cache != null) {
+                cache.putBackend(backendKey, jasminResult.getJasminCode());
+            }
+        }
+        reports.addAll(jasminResult.getReports());
+
+        if (cache != null) {
+            cache.putSource(sourceKey, new StageCache.Entry(jasminResult.getClassName(), ollirCode, jasminResult.getJasminCode(), reports));
+        }
+
+        return new Result(jasminResult, reports, stats);
+    }
+
+    public static int countNodes(JmmNode root) {
+        int count = 0;
+        Deque<JmmNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            JmmNode node = stack.pop();
+            count++;
+            node.getChildren().forEach(stack::push);
+        }
+        return count;
+    }
+}
@@ -2,22 +2,32 @@ package pt.up.fe.comp2023;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.JmmOptimization;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.cache.CacheHttpServer;
+import pt.up.fe.comp2023.cache.DirectoryCacheStore;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.jasmin.ClassFileResult;
 import pt.up.fe.comp2023.jasmin.JasminGenerator;
 import pt.up.fe.comp2023.ollir.JmmOptimizer;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
 import pt.up.fe.comp2023.semantic.AnalysisClass;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsLogs;
@@ -32,8 +42,43 @@ public class Launcher {
         // Parse arguments as a map with predefined options
         var config = parseArgs(args);
 
+        // Shares a cache directory with other machines over HTTP
+        if (config.containsKey("cacheServer")) {
+            var store = new DirectoryCacheStore(Paths.get(config.getOrDefault("cache", "jmm-cache")),
+                    Long.parseLong(config.getOrDefault("cacheSize", "256")) * 1024 * 1024);
+            var address = CacheHttpServer.parseAddress(config.get("cacheServer"));
+            new CacheHttpServer(store, config.get("cacheToken")).start(address);
+            System.out.println("Cache server listening on " + address);
+            return;
+        }
+
+        // Server mode keeps a warm compiler listening on a local socket
+        if (config.containsKey("server")) {
+            CompilerServer server = new CompilerServer(config);
+            server.warmup();
+            server.serve(CompilerServer.parseAddress(config.get("server")));
+            return;
+        }
+
+        // Client mode sends the input file to a running server
+        if (config.containsKey("connect")) {
+            System.exit(CompilerServer.sendFile(config.get("connect"), Paths.get(config.getOrDefault("inputFile", "")), config));
+        }
+
+        // Batch mode compiles every input in the same JVM, in parallel
+        if (config.get("batch").equals("true")) {
+            int status;
+            try {
+                status = new BatchCompiler(config).run(getInputs(args));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status = 1;
+            }
+            System.exit(status);
+        }
+
         // Get input file
-        File inputFile = new File(config.get("inputFile"));
+        File inputFile = new File(config.getOrDefault("inputFile", ""));
 
         // Check if file exists
         if (!inputFile.isFile()) {
@@ -43,10 +88,13 @@ public class Launcher {
         // Read contents of input file
         String code = SpecsIo.read(inputFile);
 
+        // Record the time and memory spent in each phase
+        CompilationStats stats = config.containsKey("stats") ? CompilationStats.start(inputFile.getPath()) : null;
+
         // Instantiate JmmParser
         SimpleParser parser = new SimpleParser();
         // Parse stage
-        JmmParserResult parserResult = parser.parse(code, config);
+        JmmParserResult parserResult = CompilationStats.measure("parse", () -> parser.parse(code, config));
         // Check if there are parsing errors
         // TestUtils.noErrors(parserResult.getReports());
         for (Report r : parserResult.getReports()) {
@@ -68,25 +116,64 @@ public class Launcher {
         System.out.println(semanticsResult.getSymbolTable().print());
 
         if (config.get("optimize").equals("true")) {
-            semanticsResult = new JmmOptimizer().optimize(semanticsResult);
+            JmmSemanticsResult unoptimized = semanticsResult;
+            semanticsResult = CompilationStats.measure("ast optimization", () -> new JmmOptimizer().optimize(unoptimized));
+            for (Report r : semanticsResult.getReports()) {
+                if (r.getStage() == Stage.OPTIMIZATION) {
+                    System.out.println(r.toString());
+                }
+            }
         }
 
         // Ollir Stage
-        JmmOptimization optimizer = new JmmOptimizer();
-        OllirResult optimizationResult = optimizer.toOllir(semanticsResult);
-        for (Report r : optimizationResult.getReports()) {
+        ClassUnit classUnit = new JmmOptimizer().toClassUnit(semanticsResult);
+        new JmmOptimizer().optimize(classUnit, config);
+        if (config.get("debug").equals("true")) {
+            System.out.println(new OllirPrinter(classUnit).getCode());
+        }
+        List<Report> allocationReports = new JmmOptimizer().allocateRegisters(classUnit, config);
+        for (Report r : allocationReports) {
             System.out.println(r.toString());
         }
+        // No code is written for a class whose methods do not fit in the registers allowed
+        if (allocationReports.stream().anyMatch(r -> r.getType() == ReportType.ERROR)) {
+            printStats(stats, config, parserResult);
+            System.exit(1);
+        }
 
-        // Jasmin Stage
-        JasminGenerator jasminGenerator = new JasminGenerator();
-        JasminResult jasminResult = jasminGenerator.toJasmin(optimizationResult);
-        for (Report r : jasminResult.getReports()) {
-            System.out.println(r.toString());
+        // Class file stage, writes the .class directly instead of the Jasmin code
+        if (config.get("classfile").equals("true")) {
+            ClassFileResult classFileResult = new ClassFileGenerator().toClassFile(classUnit);
+            for (Report r : classFileResult.getReports()) {
+                System.out.println(r.toString());
+            }
+
+            printStats(stats, config, parserResult);
+
+            if (config.get("debug").equals("false")) {
+                classFileResult.write(Paths.get(config.getOrDefault("outputDir", ".")));
+            }
+            return;
         }
 
+        // Jasmin Stage, the code is written out as each method is generated
+        JasminGenerator jasminGenerator = new JasminGenerator();
         if (config.get("debug").equals("false")) {
-            jasminCode(args[args.length - 1], jasminResult);
+            try (Writer out = Files.newBufferedWriter(jasminPath(config.get("inputFile")))) {
+                jasminGenerator.writeJasmin(classUnit, config, out);
+            }
+        } else {
+            jasminGenerator.writeJasmin(classUnit, config, new PrintWriter(System.out));
+        }
+
+        printStats(stats, config, parserResult);
+    }
+
+    private static void printStats(CompilationStats stats, Map<String, String> config, JmmParserResult parserResult) {
+        if (stats != null) {
+            CompilationStats.count("ast nodes", JmmCompiler.countNodes(parserResult.getRootNode()));
+            CompilationStats.stop();
+            System.out.println(config.get("stats").equals("json") ? stats.toJson() : stats.toString());
         }
     }
 
@@ -95,24 +182,79 @@ public class Launcher {
 
         // Create config
         Map<String, String> config = new HashMap<>();
-        config.put("inputFile", args[0]);
+        // The input file is the first argument that is not an option, wherever the options are
+        List<String> inputs = getInputs(args);
+        if (!inputs.isEmpty()) {
+            config.put("inputFile", inputs.get(0));
+        }
         config.put("optimize", "false");
         config.put("registerAllocation", "-1");
         config.put("debug", "false");
+        config.put("batch", "false");
+        config.put("classfile", "false");
 
         for(int i = 0; i < args.length; i++) {
             if (args[i].equals("-o")) {
                 config.put("optimize", "true");
+            } else if (args[i].startsWith("-r=")) {
+                config.put("registerAllocation", args[i].substring("-r=".length()));
+            } else if (args[i].equals("-r") && i + 1 < args.length) {
+                config.put("registerAllocation", args[++i]);
+            } else if (args[i].equals("--classfile")) {
+                config.put("classfile", "true");
+            } else if (args[i].equals("--batch")) {
+                config.put("batch", "true");
+            } else if (args[i].startsWith("--output=")) {
+                config.put("outputDir", args[i].substring("--output=".length()));
+            } else if (args[i].startsWith("--threads=")) {
+                config.put("threads", args[i].substring("--threads=".length()));
+            } else if (args[i].equals("--server")) {
+                config.put("server", "7777");
+            } else if (args[i].startsWith("--server=")) {
+                config.put("server", args[i].substring("--server=".length()));
+            } else if (args[i].startsWith("--connect=")) {
+                config.put("connect", args[i].substring("--connect=".length()));
+            } else if (args[i].startsWith("--cache=")) {
+                config.put("cache", args[i].substring("--cache=".length()));
+            } else if (args[i].startsWith("--cache-size=")) {
+                config.put("cacheSize", args[i].substring("--cache-size=".length()));
+            } else if (args[i].equals("--stats")) {
+                config.put("stats", "text");
+            } else if (args[i].startsWith("--stats=")) {
+                config.put("stats", args[i].substring("--stats=".length()));
+            } else if (args[i].startsWith("--cache-server=")) {
+                config.put("cacheServer", args[i].substring("--cache-server=".length()));
+            } else if (args[i].startsWith("--cache-token=")) {
+                config.put("cacheToken", args[i].substring("--cache-token=".length()));
+            } else if (args[i].startsWith("--parallel-children=")) {
+                config.put("parallelChildren", args[i].substring("--parallel-children=".length()));
             }
         }
+        // The token can also come from the environment, so that it does not show in the list of processes
+        if (!config.containsKey("cacheToken") && System.getenv("JMM_CACHE_TOKEN") != null) {
+            config.put("cacheToken", System.getenv("JMM_CACHE_TOKEN"));
+        }
 
         return config;
     }
 
-    private static void jasminCode(String inputFilePath, JasminResult jasminResult) throws IOException {
+    // Every argument that is not an option, or the value of -r n, is an input (file, directory, glob or @list)
+    private static List<String> getInputs(String[] args) {
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-r")) {
+                i++;
+            } else if (!args[i].startsWith("-")) {
+                inputs.add(args[i]);
+            }
+        }
+        return inputs;
+    }
+
+    private static Path jasminPath(String inputFilePath) {
         String fileName = Paths.get(inputFilePath).getFileName().toString();
         String fileNameWOExtension = fileName.split("\\.")[0];
-        Files.writeString(Paths.get(fileNameWOExtension + ".j"), jasminResult.getJasminCode());
+        return Paths.get(fileNameWOExtension + ".j");
     }
 
 }
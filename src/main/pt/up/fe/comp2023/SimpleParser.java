@@ -1,8 +1,16 @@
 package pt.up.fe.comp2023;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
 import pt.up.fe.comp.jmm.ast.antlr.ThrowingErrorListener;
 import pt.up.fe.comp.jmm.parser.JmmParser;
@@ -14,6 +22,9 @@ import pt.up.fe.comp.jmm.report.Stage;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Copyright 2022 SPeCS.
@@ -30,6 +41,8 @@ import java.util.Map;
 
 public class SimpleParser implements JmmParser {
 
+    private static final long PARSER_STACK_SIZE = 1L << 30;
+
     @Override
     public String getDefaultRule() {
         return "program";
@@ -39,19 +52,29 @@ public class SimpleParser implements JmmParser {
     public JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config) {
 
         try {
-            // Convert code string into a character stream
-            var input = new ANTLRInputStream(jmmCode);
-            // Transform characters into tokens using the lexer
-            var lex = new pt.up.fe.comp2023.JavammLexer(input);
-            // Wrap lexer around a token stream
-            var tokens = new CommonTokenStream(lex);
+            var lex = newLexer(jmmCode);
             // Transforms tokens into a parse tree
-            var parser = new pt.up.fe.comp2023.JavammParser(tokens);
+            var parser = newParser(lex);
+
+            // Both parses run on this thread, and move to a thread with a large stack once the code overflowed it
+            var stack = new ParserStack(parser);
+
+            // First try the faster SLL prediction, which gives up at the first error. It only fails on code with
+            // syntax errors or that needs full context to be parsed, so most programs are parsed in one go
+            var root = parseSLL(lex, parser, startingRule, stack);
+
+            if (root.isEmpty()) {
+                // Parse again from the start with full LL prediction, which also reports the syntax errors
+                CompilationStats.count("ll parses", 1);
+                parser.reset();
+                parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+                root = parseLL(lex, parser, startingRule, stack);
+            }
 
             // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule)
+            return root
                     // If there were no errors and a root node was generated, create a JmmParserResult with the node
-                    .map(root -> new JmmParserResult(root, Collections.emptyList(), config))
+                    .map(node -> new JmmParserResult(node, Collections.emptyList(), config))
                     // If there were errors, create an error JmmParserResult without root node
                     .orElseGet(() -> JmmParserResult.newError(new Report(ReportType.ERROR, Stage.SYNTATIC, -1,
                             "There were " + parser.getNumberOfSyntaxErrors() + " syntax errors during parsing, terminating")));
@@ -61,4 +84,127 @@ public class SimpleParser implements JmmParser {
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e));
         }
     }
+
+    // Parses with a single prediction mode, empty when the code cannot be parsed with it. The compiler always tries SLL
+    // first, so the tests use this to check that SLL and LL give the same tree
+    static Optional<JmmNode> parse(String jmmCode, String startingRule, PredictionMode mode) {
+        var lex = newLexer(jmmCode);
+        var parser = newParser(lex);
+        var stack = new ParserStack(parser);
+        parser.removeErrorListeners();
+
+        return mode == PredictionMode.SLL ? parseSLL(lex, parser, startingRule, stack)
+                : parseLL(lex, parser, startingRule, stack);
+    }
+
+    private static Lexer newLexer(String jmmCode) {
+        // Convert code string into a character stream
+        var input = new ANTLRInputStream(jmmCode);
+        // Transform characters into tokens using the lexer
+        var lex = new pt.up.fe.comp2023.JavammLexer(input);
+        lex.removeErrorListeners();
+        lex.addErrorListener(new ThrowingErrorListener());
+        return lex;
+    }
+
+    // Wraps the lexer around a token stream, reading all tokens now, so errors in the lexer are not taken as a failure
+    // of the SLL parse
+    private static Parser newParser(Lexer lex) {
+        var tokens = new CommonTokenStream(lex);
+        tokens.fill();
+        return new pt.up.fe.comp2023.JavammParser(tokens);
+    }
+
+    private static Optional<JmmNode> parseSLL(Lexer lex, Parser parser, String startingRule, ParserStack stack) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+
+        try {
+            return stack.run(() -> AntlrParser.parse(lex, parser, startingRule));
+        } catch (RuntimeException e) {
+            // The bail strategy throws at the first syntax error, any other failure is not a reason to parse again
+            if (!hasCause(e, ParseCancellationException.class)) {
+                throw e;
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<JmmNode> parseLL(Lexer lex, Parser parser, String startingRule, ParserStack stack) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        return stack.run(() -> AntlrParser.parse(lex, parser, startingRule));
+    }
+
+    // The parse tree of a left recursive rule is as deep as the longest chain of operators, and both the parser
+    // and the conversion to JmmNode recurse over it. Most programs fit in the stack of the calling thread, so a
+    // parse only runs in a thread with a stack large enough for expressions with hundreds of thousands of
+    // operators after it overflowed that stack, and the parses after it go there directly
+    private static class ParserStack {
+        private final Parser parser;
+        private boolean large;
+
+        private ParserStack(Parser parser) {
+            this.parser = parser;
+        }
+
+        private <T> T run(Supplier<T> action) {
+            if (!large) {
+                try {
+                    return action.get();
+                } catch (RuntimeException | StackOverflowError e) {
+                    if (!hasCause(e, StackOverflowError.class)) {
+                        throw e;
+                    }
+                    large = true;
+                    CompilationStats.count("large stack parses", 1);
+                    // Starts again from the first token, with the same prediction mode and error strategy
+                    parser.reset();
+                }
+            }
+            return onLargeStack(CompilationStats.task(action));
+        }
+    }
+
+    // AntlrParser calls the rule by reflection, so what the rule throws arrives as the cause of a RuntimeException
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> T onLargeStack(Supplier<T> action) {
+        var result = new AtomicReference<T>();
+        var failure = new AtomicReference<Throwable>();
+        var thread = new Thread(null, () -> {
+            try {
+                result.set(action.get());
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "parser", PARSER_STACK_SIZE);
+
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while parsing", e);
+        }
+
+        if (failure.get() instanceof RuntimeException) {
+            throw (RuntimeException) failure.get();
+        }
+        if (failure.get() instanceof Error) {
+            throw (Error) failure.get();
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException(failure.get());
+        }
+        return result.get();
+    }
 }
@@ -0,0 +1,102 @@
+package pt.up.fe.comp2023.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+// Minimal HTTP front for a CacheStore, so that several machines can share one cache through HttpCacheStore.
+// It listens on the loopback interface unless given another address, and then every request must carry the shared
+// token, since anyone who can write an entry chooses the code other machines get for it.
+public class CacheHttpServer {
+
+    private final CacheStore store;
+    // Null when requests are not authenticated, only allowed on the loopback interface
+    private final String token;
+
+    public CacheHttpServer(CacheStore store) {
+        this(store, null);
+    }
+
+    public CacheHttpServer(CacheStore store, String token) {
+        this.store = store;
+        this.token = token;
+    }
+
+    // '<port>' is on the loopback interface, '<host>:<port>' on the interface of that host
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon == -1) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    public HttpServer start(int port) throws IOException {
+        return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public HttpServer start(InetSocketAddress address) throws IOException {
+        if (token == null && (address.isUnresolved() || !address.getAddress().isLoopbackAddress())) {
+            throw new IllegalArgumentException("A cache server on " + address + " is reachable by other machines, "
+                    + "it needs a shared token (--cache-token=<token>)");
+        }
+
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+        server.start();
+        return server;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestURI().getPath().substring(1);
+
+        try (exchange) {
+            if (!isAuthorized(exchange)) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if (!key.matches("[0-9a-f]+")) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    Optional<byte[]> value = store.get(key);
+                    if (value.isEmpty()) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.sendResponseHeaders(200, value.get().length);
+                    exchange.getResponseBody().write(value.get());
+                }
+                case "PUT" -> {
+                    store.put(key, exchange.getRequestBody().readAllBytes());
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        if (token == null) {
+            return true;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null) {
+            return false;
+        }
+        // Compared in constant time, so the token cannot be guessed from how long a rejection takes
+        return MessageDigest.isEqual(header.getBytes(StandardCharsets.UTF_8),
+                ("Bearer " + token).getBytes(StandardCharsets.UTF_8));
+    }
+}
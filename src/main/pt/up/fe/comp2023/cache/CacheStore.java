@@ -0,0 +1,10 @@
+package pt.up.fe.comp2023.cache;
+
+import java.util.Optional;
+
+// Storage behind the StageCache, keys are hex digests and values are opaque bytes
+public interface CacheStore {
+    Optional<byte[]> get(String key);
+
+    void put(String key, byte[] value);
+}
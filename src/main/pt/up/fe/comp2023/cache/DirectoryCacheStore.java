@@ -0,0 +1,115 @@
+package pt.up.fe.comp2023.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Stores each entry in its own file and keeps the directory under maxBytes, evicting the least recently used entries.
+// Entries are written to a temporary file and moved into place, so several processes can share the same directory.
+public class DirectoryCacheStore implements CacheStore {
+
+    private final Path directory;
+    private final long maxBytes;
+    // Access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public DirectoryCacheStore(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(p -> p.toString().endsWith(".entry"))
+                        .sorted((a, b) -> lastModified(a).compareTo(lastModified(b)))
+                        .forEach(p -> {
+                            String name = p.getFileName().toString();
+                            long size = p.toFile().length();
+                            sizes.put(name.substring(0, name.length() - ".entry".length()), size);
+                            totalBytes += size;
+                        });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key + ".entry");
+    }
+
+    @Override
+    public synchronized Optional<byte[]> get(String key) {
+        Path path = entryPath(key);
+        try {
+            byte[] value = Files.readAllBytes(path);
+            // Keep the recency on disk too, for other processes and for the next start
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            if (sizes.get(key) == null) {
+                sizes.put(key, (long) value.length);
+                totalBytes += value.length;
+            }
+            return Optional.of(value);
+        } catch (IOException e) {
+            Long size = sizes.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, value);
+            Files.move(temp, entryPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // A cache that cannot be written only costs a recompilation
+            return;
+        }
+
+        Long previous = sizes.put(key, (long) value.length);
+        totalBytes += value.length - (previous == null ? 0 : previous);
+        evict();
+    }
+
+    private void evict() {
+        var iterator = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            try {
+                Files.deleteIfExists(entryPath(eldest.getKey()));
+            } catch (IOException e) {
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,186 @@
+package pt.up.fe.comp2023.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Content-addressed cache for the outputs of the compiler stages.
+// A source entry (source + options + compiler version) holds the OLLIR, the Jasmin code and the reports, so an
+// unchanged file skips every stage. A backend entry (OLLIR + options + compiler version) holds only the Jasmin code,
+// so a file whose source changed but whose OLLIR did not (comments, formatting) still skips the backend.
+public class StageCache {
+
+    // Options that change the generated code, every other option is ignored in the keys
+    private static final List<String> KEY_OPTIONS = List.of("optimize", "registerAllocation");
+
+    public record Entry(String className, String ollirCode, String jasminCode, List<Report> reports) {
+    }
+
+    private static volatile String compilerVersion;
+
+    private final CacheStore store;
+    private final Gson gson = new Gson();
+
+    public StageCache(CacheStore store) {
+        this.store = store;
+    }
+
+    // 'http://...' uses a remote store, with the 'cacheToken' of its server if it has one, anything else is a local
+    // directory
+    public static StageCache fromConfig(Map<String, String> config) {
+        String location = config.get("cache");
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            return new StageCache(new HttpCacheStore(location, config.get("cacheToken")));
+        }
+        long maxBytes = Long.parseLong(config.getOrDefault("cacheSize", "256")) * 1024 * 1024;
+        return new StageCache(new DirectoryCacheStore(Paths.get(location), maxBytes));
+    }
+
+    public String sourceKey(String code, Map<String, String> config) {
+        return digest("source", code, config);
+    }
+
+    public String backendKey(String ollirCode, Map<String, String> config) {
+        return digest("backend", ollirCode, config);
+    }
+
+    public Optional<Entry> getSource(String key) {
+        return store.get(key).flatMap(this::decode);
+    }
+
+    public void putSource(String key, Entry entry) {
+        store.put(key, encode(entry));
+    }
+
+    public Optional<String> getBackend(String key) {
+        return store.get(key).map(value -> new String(value, StandardCharsets.UTF_8));
+    }
+
+    public void putBackend(String key, String jasminCode) {
+        store.put(key, jasminCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String digest(String level, String content, Map<String, String> config) {
+        MessageDigest digest = newDigest();
+        update(digest, level);
+        update(digest, getCompilerVersion());
+        for (String option : KEY_OPTIONS) {
+            update(digest, option + "=" + config.getOrDefault(option, ""));
+        }
+        update(digest, content);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Length prefix, so that different splits of the same bytes give different keys
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Released builds use the jar version, development builds hash the compiler classes themselves,
+    // so that entries produced by an older compiler are never reused
+    public static String getCompilerVersion() {
+        if (compilerVersion == null) {
+            String version = StageCache.class.getPackage().getImplementationVersion();
+            compilerVersion = version != null ? version : hashCompilerCode();
+        }
+        return compilerVersion;
+    }
+
+    private static String hashCompilerCode() {
+        MessageDigest digest = newDigest();
+        try {
+            Path location = Paths.get(StageCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            List<Path> files;
+            if (Files.isDirectory(location)) {
+                try (Stream<Path> walk = Files.walk(location)) {
+                    files = walk.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+                }
+            } else {
+                files = List.of(location);
+            }
+            for (Path file : files) {
+                try (InputStream input = Files.newInputStream(file)) {
+                    digest.update(input.readAllBytes());
+                }
+            }
+        } catch (IOException | URISyntaxException | SecurityException e) {
+            return "unknown";
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private byte[] encode(Entry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("className", entry.className());
+        json.addProperty("ollir", entry.ollirCode());
+        json.addProperty("jasmin", entry.jasminCode());
+
+        JsonArray reports = new JsonArray();
+        for (Report report : entry.reports()) {
+            JsonObject jsonReport = new JsonObject();
+            jsonReport.addProperty("type", report.getType().name());
+            jsonReport.addProperty("stage", report.getStage().name());
+            jsonReport.addProperty("line", report.getLine());
+            jsonReport.addProperty("column", report.getColumn());
+            jsonReport.addProperty("message", report.getMessage());
+            reports.add(jsonReport);
+        }
+        json.add("reports", reports);
+
+        return gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Optional<Entry> decode(byte[] value) {
+        try {
+            JsonObject json = gson.fromJson(new String(value, StandardCharsets.UTF_8), JsonObject.class);
+
+            List<Report> reports = new ArrayList<>();
+            for (var element : json.getAsJsonArray("reports")) {
+                JsonObject jsonReport = element.getAsJsonObject();
+                reports.add(new Report(ReportType.valueOf(jsonReport.get("type").getAsString()),
+                        Stage.valueOf(jsonReport.get("stage").getAsString()),
+                        jsonReport.get("line").getAsInt(),
+                        jsonReport.get("column").getAsInt(),
+                        jsonReport.get("message").getAsString()));
+            }
+
+            return Optional.of(new Entry(json.get("className").getAsString(), json.get("ollir").getAsString(),
+                    json.get("jasmin").getAsString(), reports));
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException | NullPointerException e) {
+            // A corrupted entry is just a miss
+            return Optional.empty();
+        }
+    }
+}
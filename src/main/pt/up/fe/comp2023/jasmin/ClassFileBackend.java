@@ -0,0 +1,13 @@
+package pt.up.fe.comp2023.jasmin;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+// Sibling of JasminBackend that produces the .class bytes directly
+public interface ClassFileBackend {
+    ClassFileResult toClassFile(ClassUnit classUnit);
+
+    default ClassFileResult toClassFile(OllirResult ollirResult) {
+        return toClassFile(ollirResult.getOllirClass());
+    }
+}
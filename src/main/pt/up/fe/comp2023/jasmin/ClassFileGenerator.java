@@ -0,0 +1,16 @@
+package pt.up.fe.comp2023.jasmin;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp2023.CompilationStats;
+import java.util.Collections;
+
+public class ClassFileGenerator implements ClassFileBackend {
+    @Override
+    public ClassFileResult toClassFile(ClassUnit classUnit) {
+        byte[] bytes = CompilationStats.measure("class file", () -> new OllirToClassFile(classUnit).getBytes());
+        if (CompilationStats.isRecording()) {
+            CompilationStats.count("class file bytes", bytes.length);
+        }
+        return new ClassFileResult(classUnit.getClassName(), bytes, Collections.emptyList());
+    }
+}
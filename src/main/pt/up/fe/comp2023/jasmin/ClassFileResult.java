@@ -0,0 +1,39 @@
+package pt.up.fe.comp2023.jasmin;
+
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ClassFileResult {
+
+    private final String className;
+    private final byte[] bytes;
+    private final List<Report> reports;
+
+    public ClassFileResult(String className, byte[] bytes, List<Report> reports) {
+        this.className = className;
+        this.bytes = bytes;
+        this.reports = reports;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    // Writes <className>.class inside the given directory
+    public Path write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return Files.write(directory.resolve(className + ".class"), bytes);
+    }
+}
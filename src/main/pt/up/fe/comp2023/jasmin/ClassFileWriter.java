@@ -0,0 +1,276 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes the bytes of a .class file: constant pool, fields, and methods with their Code attribute.
+// Version 49 is used, the same family Jasmin targets, so no StackMapTable has to be generated.
+public class ClassFileWriter {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int accessFlags;
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    public ClassFileWriter(int accessFlags, String className, String superClassName) {
+        this.accessFlags = accessFlags;
+        this.thisClass = classRef(className);
+        this.superClass = classRef(superClassName);
+    }
+
+    // Constant pool, every entry is added once and reused afterwards
+    private int constant(String key, int tag, Writer writer) {
+        Integer index = poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(tag);
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolIndexes.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public int utf8(String value) {
+        return constant("U" + value, CONSTANT_UTF8, out -> out.writeUTF(value));
+    }
+
+    public int integer(int value) {
+        return constant("I" + value, CONSTANT_INTEGER, out -> out.writeInt(value));
+    }
+
+    public int string(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, CONSTANT_STRING, out -> out.writeShort(utf8));
+    }
+
+    public int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, CONSTANT_CLASS, out -> out.writeShort(name));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("F" + owner + "." + name + ":" + descriptor, CONSTANT_FIELDREF, out -> {
+            out.writeShort(classIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("M" + owner + "." + name + ":" + descriptor, CONSTANT_METHODREF, out -> {
+            out.writeShort(classIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    public void addField(int accessFlags, String name, String descriptor) {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(accessFlags);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    public void addMethod(int accessFlags, String name, String descriptor, Code code) {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            byte[] instructions = code.resolve();
+
+            out.writeShort(accessFlags);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+
+            out.writeShort(utf8("Code"));
+            out.writeInt(2 + 2 + 4 + instructions.length + 2 + 2);
+            out.writeShort(code.computeMaxStack());
+            out.writeShort(code.maxLocals);
+            out.writeInt(instructions.length);
+            out.write(instructions);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    public byte[] toByteArray() {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+
+            out.writeShort(accessFlags);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Bytecode of one method. Every instruction records its effect on the operand stack, taken from Opcodes, and its
+    // branch target, so the branch offsets can be patched once all labels are known and max_stack follows the real
+    // control flow.
+    public static class Code {
+
+        private record Instruction(int offset, int stackDelta, String target, boolean fallsThrough) {
+        }
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Instruction> instructions = new ArrayList<>();
+        private final Map<String, Integer> labels = new HashMap<>();
+        private int maxLocals;
+
+        public void useLocal(int register, int size) {
+            maxLocals = Math.max(maxLocals, register + size);
+        }
+
+        public void label(String name) {
+            labels.put(name, bytes.size());
+        }
+
+        private void begin(int opcode, int stackDelta, String target) {
+            instructions.add(new Instruction(bytes.size(), stackDelta, target, Opcodes.fallsThrough(opcode)));
+        }
+
+        // One instruction, given by its opcode (or wide and the opcode it widens) followed by the bytes of its operands
+        public void op(int... bytes) {
+            int opcode = bytes[0] == Opcodes.WIDE ? bytes[1] : bytes[0];
+            begin(opcode, Opcodes.stackDelta(opcode), null);
+            for (int value : bytes) {
+                this.bytes.write(value);
+            }
+        }
+
+        // Invoke or field instruction, whose effect on the stack depends on the descriptor of the member
+        public void member(int opcode, int index, String descriptor) {
+            begin(opcode, Opcodes.stackDelta(opcode, descriptor), null);
+            bytes.write(opcode);
+            bytes.write(index >> 8);
+            bytes.write(index);
+        }
+
+        public void branch(int opcode, String label) {
+            begin(opcode, Opcodes.stackDelta(opcode), label);
+            bytes.write(opcode);
+            // Offset patched by resolve
+            bytes.write(0);
+            bytes.write(0);
+        }
+
+        byte[] resolve() {
+            byte[] code = bytes.toByteArray();
+            for (Instruction instruction : instructions) {
+                if (instruction.target() == null) {
+                    continue;
+                }
+                Integer target = labels.get(instruction.target());
+                if (target == null) {
+                    throw new RuntimeException("Undefined label '" + instruction.target() + "'");
+                }
+                int offset = target - instruction.offset();
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new RuntimeException("Branch to '" + instruction.target() + "' is too far for a 16 bit offset");
+                }
+                code[instruction.offset() + 1] = (byte) (offset >> 8);
+                code[instruction.offset() + 2] = (byte) offset;
+            }
+            if (code.length > 65535) {
+                throw new RuntimeException("Method code is larger than 64KB");
+            }
+            return code;
+        }
+
+        // Depth of the operand stack at each reachable instruction, following branches and fall-through edges
+        int computeMaxStack() {
+            Map<Integer, Integer> indexAtOffset = new HashMap<>();
+            for (int i = 0; i < instructions.size(); i++) {
+                indexAtOffset.put(instructions.get(i).offset(), i);
+            }
+
+            List<StackDepth.Step> steps = new ArrayList<>();
+            for (Instruction instruction : instructions) {
+                int target = instruction.target() == null ? -1
+                        : indexAtOffset.getOrDefault(labels.get(instruction.target()), -1);
+                steps.add(new StackDepth.Step(instruction.stackDelta(), target, instruction.fallsThrough()));
+            }
+            return StackDepth.maxStack(steps);
+        }
+    }
+}
@@ -1,14 +1,58 @@
 package pt.up.fe.comp2023.jasmin;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.jasmin.JasminBackend;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2023.CompilationStats;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Collections;
+import java.util.Map;
 
 public class JasminGenerator implements JasminBackend {
     @Override
     public JasminResult toJasmin(OllirResult ollirResult) {
-        String jasminCode = new OllirToJasmin(ollirResult.getOllirClass()).getCode();
-        return new JasminResult(ollirResult, jasminCode, Collections.emptyList());
+        return new JasminResult(ollirResult, generate(ollirResult.getOllirClass(), ollirResult.getConfig()), Collections.emptyList());
+    }
+
+    public JasminResult toJasmin(ClassUnit classUnit, Map<String, String> config) {
+        return new JasminResult(classUnit.getClassName(), generate(classUnit, config), Collections.emptyList(), config);
+    }
+
+    // Writes the Jasmin code to out as each method is generated, without keeping the whole class in memory
+    public void writeJasmin(ClassUnit classUnit, Map<String, String> config, Writer out) throws IOException {
+        OllirToJasmin ollirToJasmin = newOllirToJasmin(classUnit, config);
+        try {
+            CompilationStats.measure("jasmin", () -> {
+                try {
+                    ollirToJasmin.writeCode(out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        count(ollirToJasmin);
+    }
+
+    private static String generate(ClassUnit classUnit, Map<String, String> config) {
+        OllirToJasmin ollirToJasmin = newOllirToJasmin(classUnit, config);
+        String jasminCode = CompilationStats.measure("jasmin", ollirToJasmin::getCode);
+        count(ollirToJasmin);
+        return jasminCode;
+    }
+
+    // The peephole rules run with -o
+    private static OllirToJasmin newOllirToJasmin(ClassUnit classUnit, Map<String, String> config) {
+        return new OllirToJasmin(classUnit, "true".equals(config.get("optimize")));
+    }
+
+    private static void count(OllirToJasmin ollirToJasmin) {
+        CompilationStats.count("jasmin instructions", ollirToJasmin.getInstructionCount());
+        ollirToJasmin.getPeepholeRules().forEach((rule, applied) -> CompilationStats.count("peephole " + rule, applied));
     }
 }
@@ -14,13 +14,30 @@ public class JasminInstruction {
     private ClassUnit classUnit;
     private JasminUtils jasminUtils;
     private HashMap<String, Descriptor> varTable;
-    private static int conditionalId = 0;
+    // Built once per method instead of once per instruction
+    private final FunctionClassMap<Instruction, String> instructionMap = new FunctionClassMap<>();
 
-    JasminInstruction(ClassUnit classUnit, Method method) {
+    JasminInstruction(ClassUnit classUnit, Method method, JasminUtils jasminUtils) {
         this.classUnit = classUnit;
         this.method = method;
         this.varTable = method.getVarTable();
-        this.jasminUtils = new JasminUtils(this.classUnit);
+        this.jasminUtils = jasminUtils;
+
+        //Instruction that were in the older OllirToJasmin with improvements
+        instructionMap.put(CallInstruction.class, this::getCode);
+        instructionMap.put(GetFieldInstruction.class, this::getCode);
+        instructionMap.put(PutFieldInstruction.class, this::getCode);
+        instructionMap.put(AssignInstruction.class, this::getCode);
+        instructionMap.put(ReturnInstruction.class, this::getCode);
+        instructionMap.put(UnaryOpInstruction.class, this::getCode);
+        instructionMap.put(BinaryOpInstruction.class, this::getCode);
+
+        //Instruction that weren't in the older OllirToJasmin
+        instructionMap.put(SingleOpInstruction.class, this::getCode);
+        instructionMap.put(GotoInstruction.class, this::getCode);
+        instructionMap.put(SingleOpCondInstruction.class, this::getCode);
+        instructionMap.put(OpCondInstruction.class, this::getCode);
+        instructionMap.put(CondBranchInstruction.class, this::getCode);
     }
 
     @Deprecated
@@ -50,24 +67,6 @@ public class JasminInstruction {
     public String getCode(Instruction instruction, boolean isAssign){
         var code = new StringBuilder();
 
-        FunctionClassMap<Instruction, String> instructionMap = new FunctionClassMap<>();
-
-        //Instruction that were in the older OllirToJasmin with improvements
-        instructionMap.put(CallInstruction.class, this::getCode);
-        instructionMap.put(GetFieldInstruction.class, this::getCode);
-        instructionMap.put(PutFieldInstruction.class, this::getCode);
-        instructionMap.put(AssignInstruction.class, this::getCode);
-        instructionMap.put(ReturnInstruction.class, this::getCode);
-        instructionMap.put(UnaryOpInstruction.class, this::getCode);
-        instructionMap.put(BinaryOpInstruction.class, this::getCode);
-
-        //Instruction that weren't in the older OllirToJasmin
-        instructionMap.put(SingleOpInstruction.class, this::getCode);
-        instructionMap.put(GotoInstruction.class, this::getCode);
-        instructionMap.put(SingleOpCondInstruction.class, this::getCode);
-        instructionMap.put(OpCondInstruction.class, this::getCode);
-        instructionMap.put(CondBranchInstruction.class, this::getCode);
-
         var labels = method.getLabels(instruction);
 
         if(labels.size() != 0) {
@@ -119,17 +118,9 @@ public class JasminInstruction {
         var operandsTypes = callInstruction.getListOfOperands().stream().map(element ->this.jasminUtils.getJasminType(element.getType())).collect(Collectors.joining());
         code.append(operandsTypes).append(")").append(this.jasminUtils.getJasminType(callInstruction.getReturnType()) + "\n");
 
-        this.jasminUtils.updateStackLimit();
-        for(int i = 0; i < callInstruction.getListOfOperands().size(); i++){
-            this.jasminUtils.subCurrentStack();
-        }
-
         if(!callInstruction.getReturnType().getTypeOfElement().equals(ElementType.VOID) && !isAssign){
             code.append("\tpop\n");
-            this.jasminUtils.updateStackLimit();
-            this.jasminUtils.subCurrentStack();
         }
-        this.jasminUtils.addCurrentStack();
 
         return code.toString();
     }
@@ -151,18 +142,11 @@ public class JasminInstruction {
         code.append(createListOperands(callInstruction));
         code.append(")").append(this.jasminUtils.getJasminType(callInstruction.getReturnType()) + '\n');
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-        for(int i = 0; i < callInstruction.getListOfOperands().size(); i++){
-            this.jasminUtils.subCurrentStack();
-        }
-
         if(!callInstruction.getReturnType().getTypeOfElement().equals(ElementType.VOID)
                 && !isAssign){
             code.append("\tpop\n");
             return code.toString();
         }
-        this.jasminUtils.addCurrentStack();
 
         return code.toString();
     }
@@ -187,19 +171,10 @@ public class JasminInstruction {
         code.append(createListOperands(callInstruction));
         code.append(")").append(this.jasminUtils.getJasminType(callInstruction.getReturnType()) + '\n');
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-        for(int i = 0; i < callInstruction.getListOfOperands().size(); i++){
-            this.jasminUtils.subCurrentStack();
-        }
-
         if(!method.getReturnType().getTypeOfElement().equals(ElementType.VOID)
                 && !isAssign){
             code.append("\tpop\n");
-            this.jasminUtils.updateStackLimit();
-            this.jasminUtils.subCurrentStack();
         }
-        this.jasminUtils.addCurrentStack();
 
         return code.toString();
     }
@@ -231,12 +206,6 @@ public class JasminInstruction {
         }
         code.append("\n");
 
-        this.jasminUtils.updateStackLimit();
-        for(int i = 0; i < callInstruction.getListOfOperands().size(); i++){
-            this.jasminUtils.subCurrentStack();
-        }
-        this.jasminUtils.addCurrentStack();
-
         return code.toString();
     }
 
@@ -252,10 +221,6 @@ public class JasminInstruction {
         code.append("\t" + this.jasminUtils.loadElement(callInstruction.getFirstArg(), this.varTable));
         code.append("\t" + "arraylength\n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-        this.jasminUtils.addCurrentStack();
-
         return code.toString();
     }
 
@@ -284,10 +249,6 @@ public class JasminInstruction {
         code.append(this.jasminUtils.getFieldSpecs(firstArg, secondArgStr) + " ");
         code.append(this.jasminUtils.getJasminType(thirdArg.getType()) + "\n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-        this.jasminUtils.subCurrentStack();
-
         return code.toString();
     }
 
@@ -314,10 +275,6 @@ public class JasminInstruction {
         code.append(this.jasminUtils.getFieldSpecs(firstArg, secondArgStr) + " ");
         code.append(this.jasminUtils.getJasminType(getFieldInstruction.getFieldType()) + "\n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-        this.jasminUtils.addCurrentStack();
-
         return code.toString();
     }
 
@@ -333,9 +290,6 @@ public class JasminInstruction {
         code.append("\t" + this.jasminUtils.getJasminReturnType(returnInstruction.getOperand().getType().getTypeOfElement()));
         code.append("return\n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-
         return code.toString();
     }
 
@@ -355,19 +309,30 @@ public class JasminInstruction {
                 } else {
                     return "";
                 }
+                // Jasmin writes a wide iinc for the increments that do not fit in a byte, but no iinc holds more
+                long increment = Long.parseLong(literalElement.getLiteral());
+                if (increment < Short.MIN_VALUE || increment > Short.MAX_VALUE) {
+                    return "";
+                }
 
-                if (this.varTable.get(dest.getName()).getVirtualReg() == this.varTable.get(operand.getName()).getVirtualReg()) {
+                // iinc r c does the same as loading, adding and storing back r, whichever variables share r
+                if (isLocal(dest) && isLocal(operand)
+                        && this.varTable.get(dest.getName()).getVirtualReg() == this.varTable.get(operand.getName()).getVirtualReg()) {
                     var code = new StringBuilder();
                     code.append("\tiinc " + this.varTable.get(operand.getName()).getVirtualReg() + " " + literalElement.getLiteral() + "\n");
                     return code.toString();
-                } else if (instruction.getPredecessors() != null) {
+                } else if (instruction.getPredecessors() != null && !instruction.getSuccessors().isEmpty()) {
                     Node successor = instruction.getSuccessors().get(0);
                     if (successor instanceof AssignInstruction) {
                         Instruction instruction2 = ((AssignInstruction) successor).getRhs();
-                        if (instruction2 instanceof SingleOpInstruction) {
+                        if (instruction2 instanceof SingleOpInstruction && ((SingleOpInstruction) instruction2).getSingleOperand() instanceof Operand) {
                             Operand destOperand = (Operand) ((AssignInstruction) successor).getDest();
                             Operand assignOperand = (Operand) ((SingleOpInstruction) instruction2).getSingleOperand();
-                            if (this.varTable.get(destOperand.getName()).getVirtualReg() == this.varTable.get(operand.getName()).getVirtualReg()) {
+                            // t = x + c followed by x = t, matched by name: after register allocation unrelated
+                            // variables share registers
+                            if (isLocal(destOperand) && isLocal(assignOperand) && isLocal(operand)
+                                    && destOperand.getName().equals(operand.getName())
+                                    && assignOperand.getName().equals(dest.getName())) {
                                 var code = new StringBuilder();
                                 code.append("\tiinc " + this.varTable.get(destOperand.getName()).getVirtualReg() + " " + literalElement.getLiteral() + "\n");
                                 code.append("\t" + this.jasminUtils.loadElement(destOperand, this.varTable));
@@ -391,6 +356,11 @@ public class JasminInstruction {
     public String getCode(AssignInstruction assignInstruction) {
         var code = new StringBuilder();
         Operand operand = (Operand) assignInstruction.getDest();
+        // A copy between variables the register allocation put in the same register does nothing
+        if (isCopyToSameRegister(operand, assignInstruction.getRhs())) {
+            return "";
+        }
+
         if(operand instanceof ArrayOperand) {
             code.append(jasminUtils.loadArrayRefAndIndex((ArrayOperand) operand, varTable));
         }
@@ -410,12 +380,37 @@ public class JasminInstruction {
         return code.toString();
     }
 
+    // A scalar local variable or parameter, the only operands iinc can update
+    private boolean isLocal(Operand operand) {
+        if (operand instanceof ArrayOperand) {
+            return false;
+        }
+        Descriptor descriptor = varTable.get(operand.getName());
+        return descriptor != null && descriptor.getScope() != VarScope.FIELD;
+    }
+
+    private boolean isCopyToSameRegister(Operand dest, Instruction rhs) {
+        if (dest instanceof ArrayOperand || !(rhs instanceof SingleOpInstruction)) {
+            return false;
+        }
+        Element source = ((SingleOpInstruction) rhs).getSingleOperand();
+        if (source.isLiteral() || source instanceof ArrayOperand) {
+            return false;
+        }
+        Descriptor destDescriptor = varTable.get(dest.getName());
+        Descriptor sourceDescriptor = varTable.get(((Operand) source).getName());
+        return destDescriptor != null && sourceDescriptor != null
+                && destDescriptor.getScope() != VarScope.FIELD && sourceDescriptor.getScope() != VarScope.FIELD
+                && destDescriptor.getVirtualReg() == sourceDescriptor.getVirtualReg();
+    }
+
     // Get Code for singleOpInstruction
     public String getCode(SingleOpInstruction singleOpInstruction) {
         return "\t" + this.jasminUtils.loadElement(singleOpInstruction.getSingleOperand(), this.varTable);
     }
 
     public String getCode(UnaryOpInstruction unaryOpInstruction) {
+        int conditionalId = this.jasminUtils.getConditionalId();
         var code = new StringBuilder();
         code.append("\t"+this.jasminUtils.loadElement(unaryOpInstruction.getOperand(), varTable));
 
@@ -423,15 +418,12 @@ public class JasminInstruction {
             case NOT:
             case NOTB:
                 code.append("\tifne TRUE" + conditionalId + "\n");
-                this.jasminUtils.updateStackLimit();
-                this.jasminUtils.subCurrentStack();
                 code.append("\ticonst_1\n");
                 code.append("\tgoto FALSE" + conditionalId + "\n");
                 code.append("TRUE" + conditionalId + ":\n");
                 code.append("\ticonst_0\n");
                 code.append("FALSE"+conditionalId+":\n");
-                this.jasminUtils.addCurrentStack();
-                conditionalId++;
+                this.jasminUtils.nextConditionalId();
                 break;
             default:
                 throw new NotImplementedException(unaryOpInstruction.getOperation().getOpType());
@@ -465,23 +457,17 @@ public class JasminInstruction {
 
             LiteralElement literal = new LiteralElement(result + "", new Type(ElementType.INT32));
             code.append("\t").append(jasminUtils.loadElement(literal, varTable));
-
-            this.jasminUtils.updateStackLimit();
         } else {
             code.append("\t").append(this.jasminUtils.loadElement(leftOperand, this.varTable));
             code.append("\t").append(this.jasminUtils.loadElement(rightOperand, this.varTable));
             code.append("\t").append(operation).append("\n");
-
-            this.jasminUtils.updateStackLimit();
-            this.jasminUtils.subCurrentStack();
-            this.jasminUtils.subCurrentStack();
-            this.jasminUtils.addCurrentStack();
         }
 
         return code.toString();
     }
 
     private String createBranchCode(String operation, Element leftOperand, Element rightOperand) {
+        int conditionalId = this.jasminUtils.getConditionalId();
         var code = new StringBuilder();
         LiteralElement literalElement = null;
         Operand operand = null;
@@ -499,8 +485,6 @@ public class JasminInstruction {
                 result = doCmpOptimization(operation, ((LiteralElement) leftOperand).getLiteral(),((LiteralElement) rightOperand).getLiteral());
             }
 
-            this.jasminUtils.addCurrentStack();
-
             if (result){
                 return "\ticonst_1\n";
             } else {
@@ -520,16 +504,9 @@ public class JasminInstruction {
 
         if(prefix.equals("")) {
             code.append("\t" + this.jasminUtils.loadElement(operand, this.varTable));
-
-            this.jasminUtils.updateStackLimit();
-            this.jasminUtils.subCurrentStack();
         } else {
             code.append("\t" + this.jasminUtils.loadElement(leftOperand, this.varTable));
             code.append("\t" + this.jasminUtils.loadElement(rightOperand, this.varTable));
-
-            this.jasminUtils.updateStackLimit();
-            this.jasminUtils.subCurrentStack();
-            this.jasminUtils.subCurrentStack();
         }
 
         code.append("\t" + "if" + prefix + operation + " FALSE" + conditionalId + "\n" );
@@ -539,8 +516,7 @@ public class JasminInstruction {
         code.append("\ticonst_1\n");
         code.append("TRUE" + conditionalId + ":\n");
 
-        this.jasminUtils.addCurrentStack();
-        conditionalId++;
+        this.jasminUtils.nextConditionalId();
 
         return code.toString();
     }
@@ -600,12 +576,12 @@ public class JasminInstruction {
     }
 
     private String doOrAndCode(String operation, Element leftOperand, Element rightOperand) {
+        int conditionalId = this.jasminUtils.getConditionalId();
         var code = new StringBuilder();
         LiteralElement literal = null;
         String result = "";
 
         if(leftOperand.isLiteral() && rightOperand.isLiteral()) {
-            this.jasminUtils.addCurrentStack();
             boolean res = doBitwiseOptimization(operation, ((LiteralElement) leftOperand).getLiteral(), ((LiteralElement) rightOperand).getLiteral());
 
             if (res) {
@@ -630,23 +606,16 @@ public class JasminInstruction {
         code.append("\t" + this.jasminUtils.loadElement(leftOperand, this.varTable));
         code.append("\tifeq" + " FALSE" + conditionalId + "\n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-
         code.append("\t" + this.jasminUtils.loadElement(rightOperand, this.varTable));
         code.append("\tifeq" + " FALSE" + conditionalId + "\n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-
         code.append("\ticonst_1\n");
         code.append("\tgoto TRUE" + conditionalId + "\n");
         code.append("FALSE" + conditionalId + ":\n");
         code.append("\ticonst_0\n");
         code.append("TRUE" + conditionalId + ":\n");
 
-        this.jasminUtils.addCurrentStack();
-        conditionalId++;
+        this.jasminUtils.nextConditionalId();
 
         return code.toString();
     }
@@ -711,6 +680,7 @@ public class JasminInstruction {
 
     // Get Code for Binary Operations Instruction
     public String getCode(BinaryOpInstruction binaryOpInstruction) {
+        int conditionalId = this.jasminUtils.getConditionalId();
         var code = new StringBuilder();
         Operation op = binaryOpInstruction.getOperation();
         String opCode;
@@ -732,7 +702,6 @@ public class JasminInstruction {
                 } else {
                     code.append(opCode);
                 }
-                this.jasminUtils.updateStackLimit();
                 break;
             case DIV:
                 opCode = doDivOptimization(leftOperand, rightOperand);
@@ -757,10 +726,6 @@ public class JasminInstruction {
             case AND:
                 code.append(this.jasminUtils.loadElement(leftOperand, this.varTable));
                 code.append(this.jasminUtils.loadElement(rightOperand, this.varTable));
-                this.jasminUtils.updateStackLimit();
-                this.jasminUtils.subCurrentStack();
-                this.jasminUtils.subCurrentStack();
-                this.jasminUtils.addCurrentStack();
                 code.append("\tiand\n");
                 break;
             case ANDB:
@@ -770,10 +735,6 @@ public class JasminInstruction {
                 code.append(this.jasminUtils.loadElement(leftOperand, this.varTable));
                 code.append(this.jasminUtils.loadElement(rightOperand, this.varTable));
                 code.append("ior\n");
-                this.jasminUtils.updateStackLimit();
-                this.jasminUtils.subCurrentStack();
-                this.jasminUtils.subCurrentStack();
-                this.jasminUtils.addCurrentStack();
                 break;
             case ORB:
                 code.append(doOrAndCode("or", leftOperand, rightOperand));
@@ -788,10 +749,6 @@ public class JasminInstruction {
                 code.append(this.jasminUtils.loadElement(leftOperand, this.varTable));
                 code.append(this.jasminUtils.loadElement(rightOperand, this.varTable));
                 code.append("ixor\n");
-                this.jasminUtils.updateStackLimit();
-                this.jasminUtils.subCurrentStack();
-                this.jasminUtils.subCurrentStack();
-                this.jasminUtils.addCurrentStack();
                 break;
             case NOTB:
                 code.append("\tif_ne TRUE" + conditionalId + "\n");
@@ -800,14 +757,12 @@ public class JasminInstruction {
                 code.append("TRUE" + conditionalId + ":\n");
                 code.append("\ticonst_0");
                 code.append("FALSE"+conditionalId+":\n");
-                conditionalId++;
+                this.jasminUtils.nextConditionalId();
                 break;
             default:
                 throw new NotImplementedException(op.getOpType());
         }
 
-        this.jasminUtils.updateStackLimit();
-
         return code.toString();
     }
 
@@ -823,40 +778,117 @@ public class JasminInstruction {
         code.append(getCode(singleOpCondInstruction.getCondition()));
         code.append("\tifne " + singleOpCondInstruction.getLabel() + " \n");
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
-
         return code.toString();
     }
 
-    // Get Code for opCondInstruction
+    // Get Code for opCondInstruction, comparisons and boolean operators jump to the label directly instead of
+    // computing a boolean first, and && and || only load their right operand when the left one does not decide
     public String getCode(OpCondInstruction opCondInstruction) {
         var code = new StringBuilder();
+        Instruction condition = opCondInstruction.getCondition();
+        String label = opCondInstruction.getLabel();
+        OperationType opType = ((OpInstruction) condition).getOperation().getOpType();
 
-        code.append(getCode(opCondInstruction.getCondition()));
-        code.append("\tifne " + opCondInstruction.getLabel() + "\n");
+        if (condition instanceof BinaryOpInstruction) {
+            Element leftOperand = ((BinaryOpInstruction) condition).getLeftOperand();
+            Element rightOperand = ((BinaryOpInstruction) condition).getRightOperand();
+            String comparison = getComparison(opType);
 
-        this.jasminUtils.updateStackLimit();
-        this.jasminUtils.subCurrentStack();
+            if (comparison != null) {
+                return createComparisonJump(comparison, leftOperand, rightOperand, label);
+            }
+            if (opType == OperationType.ANDB) {
+                int conditionalId = this.jasminUtils.getConditionalId();
+                this.jasminUtils.nextConditionalId();
+                code.append(createComparisonJump("eq", leftOperand, zero(), "FALSE" + conditionalId));
+                code.append(createComparisonJump("ne", rightOperand, zero(), label));
+                code.append("FALSE" + conditionalId + ":\n");
+                return code.toString();
+            }
+            if (opType == OperationType.ORB) {
+                code.append(createComparisonJump("ne", leftOperand, zero(), label));
+                code.append(createComparisonJump("ne", rightOperand, zero(), label));
+                return code.toString();
+            }
+        } else if (opType == OperationType.NOTB) {
+            return createComparisonJump("eq", ((UnaryOpInstruction) condition).getOperand(), zero(), label);
+        }
+
+        code.append(getCode(condition));
+        code.append("\tifne " + label + "\n");
 
         return code.toString();
     }
 
-    // Get Code for condBranchInstruction
-    public String getCode(CondBranchInstruction condBranchInstruction) {
+    // Jumps to the label when the comparison holds, comparisons against 0 use the single operand instructions
+    private String createComparisonJump(String comparison, Element leftOperand, Element rightOperand, String label) {
         var code = new StringBuilder();
 
-        code.append(getCode(condBranchInstruction.getCondition()));
-        code.append(condBranchInstruction.getLabel() + "\n");
+        if (isZero(rightOperand)) {
+            code.append("\t" + this.jasminUtils.loadElement(leftOperand, this.varTable));
+            code.append("\tif" + comparison + " " + label + "\n");
+        } else if (isZero(leftOperand)) {
+            code.append("\t" + this.jasminUtils.loadElement(rightOperand, this.varTable));
+            code.append("\tif" + swapComparison(comparison) + " " + label + "\n");
+        } else {
+            code.append("\t" + this.jasminUtils.loadElement(leftOperand, this.varTable));
+            code.append("\t" + this.jasminUtils.loadElement(rightOperand, this.varTable));
+            code.append("\tif_icmp" + comparison + " " + label + "\n");
+        }
 
         return code.toString();
     }
 
-    public static void reset() {
-        conditionalId = 0;
+    private static String getComparison(OperationType opType) {
+        switch (opType) {
+            case LTH:
+                return "lt";
+            case LTE:
+                return "le";
+            case GTH:
+                return "gt";
+            case GTE:
+                return "ge";
+            case EQ:
+                return "eq";
+            case NEQ:
+                return "ne";
+            default:
+                return null;
+        }
+    }
+
+    // Comparison with the operands in the opposite order
+    private static String swapComparison(String comparison) {
+        switch (comparison) {
+            case "lt":
+                return "gt";
+            case "gt":
+                return "lt";
+            case "le":
+                return "ge";
+            case "ge":
+                return "le";
+            default:
+                return comparison;
+        }
+    }
+
+    private static boolean isZero(Element element) {
+        return element.isLiteral() && ((LiteralElement) element).getLiteral().equals("0");
     }
 
-    public int getStackLimit() {
-        return this.jasminUtils.getStackLimit();
+    private static LiteralElement zero() {
+        return new LiteralElement("0", new Type(ElementType.INT32));
+    }
+
+    // Get Code for condBranchInstruction
+    public String getCode(CondBranchInstruction condBranchInstruction) {
+        var code = new StringBuilder();
+
+        code.append(getCode(condBranchInstruction.getCondition()));
+        code.append(condBranchInstruction.getLabel() + "\n");
+
+        return code.toString();
     }
 }
@@ -0,0 +1,407 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Rewrites the Jasmin code of a method with a table of rules, each matching a few consecutive lines, until no rule
+// applies. Every pass reads the code of the previous one and writes a new list, so a method with hundreds of
+// thousands of lines is never shifted in place. The rules only look inside the method: a label is known to be
+// reached from one place, or a register to be read once, by counting the references of the whole code.
+public class JasminPeephole {
+
+    // Number of lines of the window at i that the rule replaced, after adding their replacement to out, 0 when it
+    // does not apply
+    private interface Rule {
+        int apply(int i, List<String> out);
+    }
+
+    private static final Map<String, String> NEGATED = new HashMap<>();
+
+    static {
+        String[][] pairs = {{"eq", "ne"}, {"lt", "ge"}, {"gt", "le"}};
+        for (String[] pair : pairs) {
+            for (String prefix : List.of("if", "if_icmp")) {
+                NEGATED.put(prefix + pair[0], prefix + pair[1]);
+                NEGATED.put(prefix + pair[1], prefix + pair[0]);
+            }
+        }
+        NEGATED.put("if_acmpeq", "if_acmpne");
+        NEGATED.put("if_acmpne", "if_acmpeq");
+        NEGATED.put("ifnull", "ifnonnull");
+        NEGATED.put("ifnonnull", "ifnull");
+    }
+
+    private static final Set<Integer> BOOLEANS = Set.of(0, 1);
+    private static final Set<String> UNCONDITIONAL = Set.of("goto", "return", "ireturn", "areturn", "athrow");
+
+    private final Map<String, Rule> rules = new LinkedHashMap<>();
+    private final Map<String, Integer> applied = new LinkedHashMap<>();
+
+    private List<String> code;
+    // How many jumps go to each label, where each label is, and how many times each register is read
+    private final Map<String, Integer> references = new HashMap<>();
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final Map<Integer, Integer> loads = new HashMap<>();
+
+    public JasminPeephole() {
+        rules.put("unreachable code", this::removeUnreachable);
+        rules.put("unused label", this::removeUnusedLabel);
+        rules.put("boolean branch", this::foldBooleanBranch);
+        rules.put("constant branch", this::foldConstantBranch);
+        rules.put("branch over goto", this::invertBranchOverGoto);
+        rules.put("goto next", this::removeGotoNext);
+        rules.put("jump to goto", this::threadJump);
+        rules.put("iinc", this::useIinc);
+        rules.put("push pop", this::removePushPop);
+        rules.put("store load", this::removeStoreLoad);
+        rules.put("load load", this::duplicateLoad);
+        rules.put("short constant", this::shortenConstant);
+    }
+
+    // Rewrites the code of a method, given as its lines, and returns the new lines
+    public List<String> optimize(List<String> lines) {
+        code = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.isBlank()) {
+                code.add(line.trim());
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            count();
+            List<String> out = new ArrayList<>(code.size());
+            int i = 0;
+            while (i < code.size()) {
+                int replaced = 0;
+                for (Map.Entry<String, Rule> rule : rules.entrySet()) {
+                    replaced = rule.getValue().apply(i, out);
+                    if (replaced > 0) {
+                        applied.merge(rule.getKey(), 1, Integer::sum);
+                        changed = true;
+                        break;
+                    }
+                }
+                if (replaced == 0) {
+                    out.add(code.get(i));
+                    replaced = 1;
+                }
+                i += replaced;
+            }
+            code = out;
+        }
+        return code;
+    }
+
+    // How many times each rule was applied
+    public Map<String, Integer> getApplied() {
+        return applied;
+    }
+
+    private void count() {
+        references.clear();
+        labels.clear();
+        loads.clear();
+        for (int i = 0; i < code.size(); i++) {
+            String line = code.get(i);
+            if (isLabel(line)) {
+                labels.put(labelName(line), i);
+            } else if (isJump(line)) {
+                references.merge(argument(line), 1, Integer::sum);
+            } else if (register(line, "iload") != -1 || register(line, "aload") != -1) {
+                loads.merge(Math.max(register(line, "iload"), register(line, "aload")), 1, Integer::sum);
+            } else if (opcode(line).equals("iinc")) {
+                loads.merge(Integer.parseInt(line.split(" ")[1]), 1, Integer::sum);
+            }
+        }
+    }
+
+    // Rules
+
+    // Nothing after a goto or a return runs until the next label
+    private int removeUnreachable(int i, List<String> out) {
+        if (!UNCONDITIONAL.contains(opcode(code.get(i)))) {
+            return 0;
+        }
+        int end = i + 1;
+        while (end < code.size() && !isLabel(code.get(end))) {
+            end++;
+        }
+        if (end == i + 1) {
+            return 0;
+        }
+        out.add(code.get(i));
+        return end - i;
+    }
+
+    private int removeUnusedLabel(int i, List<String> out) {
+        String line = code.get(i);
+        return isLabel(line) && !references.containsKey(labelName(line)) ? 1 : 0;
+    }
+
+    // A boolean made by a branch only to be tested by the next one:
+    // if<c> A; iconst_k; goto B; A: iconst_j; B: ifne L  ->  if<c> L (or its negation)
+    private int foldBooleanBranch(int i, List<String> out) {
+        if (i + 6 >= code.size() || !NEGATED.containsKey(opcode(code.get(i)))) {
+            return 0;
+        }
+        String labelA = argument(code.get(i));
+        String labelB = argument(code.get(i + 2));
+        Integer falseValue = intPush(code.get(i + 1));
+        Integer trueValue = intPush(code.get(i + 4));
+        String test = opcode(code.get(i + 6));
+        if (falseValue == null || trueValue == null || !BOOLEANS.contains(falseValue)
+                || !BOOLEANS.contains(trueValue) || falseValue.equals(trueValue)
+                || !opcode(code.get(i + 2)).equals("goto") || !code.get(i + 3).equals(labelA + ":")
+                || !code.get(i + 5).equals(labelB + ":") || !(test.equals("ifne") || test.equals("ifeq"))
+                || references.get(labelA) != 1 || references.get(labelB) != 1) {
+            return 0;
+        }
+        boolean jumpsWhenTrue = (trueValue == 1) == test.equals("ifne");
+        String opcode = opcode(code.get(i));
+        out.add((jumpsWhenTrue ? opcode : NEGATED.get(opcode)) + " " + argument(code.get(i + 6)));
+        return 7;
+    }
+
+    // iconst_1; ifne L  ->  goto L, and nothing when the branch is never taken
+    private int foldConstantBranch(int i, List<String> out) {
+        if (i + 1 >= code.size()) {
+            return 0;
+        }
+        Integer value = intPush(code.get(i));
+        String test = opcode(code.get(i + 1));
+        if (value == null || !test.matches("if(eq|ne|lt|ge|gt|le)")) {
+            return 0;
+        }
+        boolean taken;
+        switch (test.substring(2)) {
+            case "eq": taken = value == 0; break;
+            case "ne": taken = value != 0; break;
+            case "lt": taken = value < 0; break;
+            case "ge": taken = value >= 0; break;
+            case "gt": taken = value > 0; break;
+            default: taken = value <= 0; break;
+        }
+        if (taken) {
+            out.add("goto " + argument(code.get(i + 1)));
+        }
+        return 2;
+    }
+
+    // if<c> L1; goto L2; L1:  ->  if<!c> L2; L1:
+    private int invertBranchOverGoto(int i, List<String> out) {
+        if (i + 2 >= code.size() || !NEGATED.containsKey(opcode(code.get(i))) || !opcode(code.get(i + 1)).equals("goto")
+                || !code.get(i + 2).equals(argument(code.get(i)) + ":")) {
+            return 0;
+        }
+        out.add(NEGATED.get(opcode(code.get(i))) + " " + argument(code.get(i + 1)));
+        return 2;
+    }
+
+    private int removeGotoNext(int i, List<String> out) {
+        if (!opcode(code.get(i)).equals("goto")) {
+            return 0;
+        }
+        String target = argument(code.get(i)) + ":";
+        for (int j = i + 1; j < code.size() && isLabel(code.get(j)); j++) {
+            if (code.get(j).equals(target)) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    // A jump to a goto goes straight to where the goto leads
+    private int threadJump(int i, List<String> out) {
+        if (!isJump(code.get(i))) {
+            return 0;
+        }
+        String label = argument(code.get(i));
+        String target = label;
+        Set<String> seen = new HashSet<>();
+        String next = instructionAt(target);
+        while (next != null && opcode(next).equals("goto")) {
+            if (!seen.add(target)) {
+                // A loop of gotos is left as it is
+                return 0;
+            }
+            target = argument(next);
+            next = instructionAt(target);
+        }
+        if (target.equals(label)) {
+            return 0;
+        }
+        out.add(opcode(code.get(i)) + " " + target);
+        return 1;
+    }
+
+    // iload x; <c>; iadd; istore x  ->  iinc x c, also with the constant first and with isub
+    private int useIinc(int i, List<String> out) {
+        if (i + 3 >= code.size()) {
+            return 0;
+        }
+        int variable = register(code.get(i), "iload");
+        Integer constant = intPush(code.get(i + 1));
+        if (variable == -1 || constant == null) {
+            variable = register(code.get(i + 1), "iload");
+            constant = intPush(code.get(i));
+            if (variable == -1 || constant == null || !code.get(i + 2).equals("iadd")) {
+                return 0;
+            }
+        }
+        String operation = code.get(i + 2);
+        if (!operation.equals("iadd") && !operation.equals("isub") || register(code.get(i + 3), "istore") != variable) {
+            return 0;
+        }
+        long increment = operation.equals("iadd") ? (long) constant : -(long) constant;
+        // Jasmin writes a wide iinc for the increments that do not fit in a byte
+        if (increment < Short.MIN_VALUE || increment > Short.MAX_VALUE) {
+            return 0;
+        }
+        out.add("iinc " + variable + " " + increment);
+        return 4;
+    }
+
+    private int removePushPop(int i, List<String> out) {
+        if (i + 1 >= code.size() || !code.get(i + 1).equals("pop")) {
+            return 0;
+        }
+        String line = code.get(i);
+        boolean isPush = intPush(line) != null || register(line, "iload") != -1 || register(line, "aload") != -1
+                || line.equals("dup");
+        return isPush ? 2 : 0;
+    }
+
+    // A value stored and loaded right away stays on the stack, and is only stored when it is read again later
+    private int removeStoreLoad(int i, List<String> out) {
+        if (i + 1 >= code.size()) {
+            return 0;
+        }
+        for (String kind : List.of("i", "a")) {
+            int variable = register(code.get(i), kind + "store");
+            if (variable != -1 && register(code.get(i + 1), kind + "load") == variable) {
+                if (loads.get(variable) != 1) {
+                    out.add("dup");
+                    out.add(code.get(i));
+                }
+                return 2;
+            }
+        }
+        return 0;
+    }
+
+    private int duplicateLoad(int i, List<String> out) {
+        if (i + 1 >= code.size() || !code.get(i).equals(code.get(i + 1))
+                || register(code.get(i), "iload") == -1 && register(code.get(i), "aload") == -1) {
+            return 0;
+        }
+        out.add(code.get(i));
+        out.add("dup");
+        return 2;
+    }
+
+    // Each int constant is pushed with the shortest instruction
+    private int shortenConstant(int i, List<String> out) {
+        Integer value = intPush(code.get(i));
+        if (value == null) {
+            return 0;
+        }
+        String shortest = push(value);
+        if (shortest.equals(code.get(i))) {
+            return 0;
+        }
+        out.add(shortest);
+        return 1;
+    }
+
+    // Helpers
+
+    private static String push(int value) {
+        if (value == -1) {
+            return "iconst_m1";
+        }
+        if (value >= 0 && value <= 5) {
+            return "iconst_" + value;
+        }
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return "bipush " + value;
+        }
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            return "sipush " + value;
+        }
+        return "ldc " + value;
+    }
+
+    // Value of an instruction that pushes an int constant, null for any other instruction
+    private static Integer intPush(String line) {
+        String opcode = opcode(line);
+        try {
+            switch (opcode) {
+                case "iconst_m1":
+                    return -1;
+                case "bipush":
+                case "sipush":
+                case "ldc":
+                    return Integer.parseInt(argument(line));
+                default:
+                    return opcode.startsWith("iconst_") ? Integer.parseInt(opcode.substring(7)) : null;
+            }
+        } catch (NumberFormatException e) {
+            // ldc of a string
+            return null;
+        }
+    }
+
+    // Register of an instruction such as iload_1 or iload 4, -1 for any other instruction
+    private static int register(String line, String instruction) {
+        if (line.startsWith(instruction + "_")) {
+            return Integer.parseInt(line.substring(instruction.length() + 1));
+        }
+        if (line.startsWith(instruction + " ")) {
+            return Integer.parseInt(argument(line));
+        }
+        return -1;
+    }
+
+    // First instruction after the label, null when the label is not there
+    private String instructionAt(String label) {
+        Integer index = labels.get(label);
+        if (index == null) {
+            return null;
+        }
+        for (int i = index + 1; i < code.size(); i++) {
+            if (!isLabel(code.get(i))) {
+                return code.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLabel(String line) {
+        return line.endsWith(":");
+    }
+
+    private static String labelName(String line) {
+        return line.substring(0, line.length() - 1);
+    }
+
+    private static boolean isJump(String line) {
+        String opcode = opcode(line);
+        return opcode.equals("goto") || NEGATED.containsKey(opcode);
+    }
+
+    private static String opcode(String line) {
+        int space = line.indexOf(' ');
+        return space == -1 ? line : line.substring(0, space);
+    }
+
+    private static String argument(String line) {
+        return line.substring(line.lastIndexOf(' ') + 1);
+    }
+}
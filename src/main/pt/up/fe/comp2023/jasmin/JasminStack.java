@@ -0,0 +1,52 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Computes the .limit stack of a method from its Jasmin code. Each instruction gets its effect on the stack from
+// Opcodes, the same table the class-file backend uses, and StackDepth follows the depth through the control flow.
+public class JasminStack {
+
+    private JasminStack() {
+    }
+
+    // Maximum depth of the operand stack for the lines of a method body, labels and directives included
+    public static int maxStack(List<String> lines) {
+        List<String[]> instructions = new ArrayList<>();
+        Map<String, Integer> labels = new HashMap<>();
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith(".") || line.startsWith(";")) {
+                continue;
+            }
+            if (line.endsWith(":")) {
+                labels.put(line.substring(0, line.length() - 1), instructions.size());
+            } else {
+                instructions.add(line.split("\\s+"));
+            }
+        }
+
+        List<StackDepth.Step> steps = new ArrayList<>();
+        for (String[] parts : instructions) {
+            int opcode = Opcodes.fromName(parts[0]);
+            if (!Opcodes.isKnown(opcode)) {
+                throw new IllegalStateException("No stack effect for Jasmin instruction '" + parts[0] + "'");
+            }
+
+            int stackDelta = Opcodes.needsDescriptor(opcode) ? Opcodes.stackDelta(opcode, descriptor(parts))
+                    : Opcodes.stackDelta(opcode);
+            int target = Opcodes.isBranch(opcode) ? labels.getOrDefault(parts[parts.length - 1], -1) : -1;
+            steps.add(new StackDepth.Step(stackDelta, target, Opcodes.fallsThrough(opcode)));
+        }
+
+        return StackDepth.maxStack(steps);
+    }
+
+    // Invokes are written as Owner/name(args)ret and field instructions as Owner/name descriptor
+    private static String descriptor(String[] parts) {
+        String last = parts[parts.length - 1];
+        return parts[0].startsWith("invoke") ? last.substring(last.indexOf('(')) : last;
+    }
+}
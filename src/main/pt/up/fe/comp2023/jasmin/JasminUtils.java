@@ -8,13 +8,30 @@ import java.util.HashMap;
 
 public class JasminUtils {
     ClassUnit classUnit;
-    private static int currentStack;
-    private static int stackLimit;
+    private int conditionalId;
 
     JasminUtils(ClassUnit classUnit) {
         this.classUnit = classUnit;
     }
 
+    // Registers given by the register allocation are kept, the table is only built when it is still empty
+    public static void buildVarTable(Method method) {
+        if (method.getVarTable().isEmpty()) {
+            method.buildVarTable();
+        }
+    }
+
+    // One past the highest register of the method, 'this' and the parameters always included
+    public static int getLocalsLimit(Method method) {
+        int limit = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+        for (Descriptor descriptor : method.getVarTable().values()) {
+            if (descriptor.getScope() != VarScope.FIELD) {
+                limit = Math.max(limit, descriptor.getVirtualReg() + 1);
+            }
+        }
+        return limit;
+    }
+
     //Antes usada similarmente no OllirToJasmin
     public String getCodeFullName(String className) {
 
@@ -105,8 +122,6 @@ public class JasminUtils {
         code.append(this.loadArrayIndexes(arrayOperand, varTable));
         code.append("\n");
 
-        this.addCurrentStack();
-
         return code.toString();
     }
 
@@ -176,8 +191,6 @@ public class JasminUtils {
 
         }
         instrStr += "\n";
-        this.updateStackLimit();
-        this.subCurrentStack();
 
         return instrStr;
     }
@@ -185,8 +198,6 @@ public class JasminUtils {
     public String loadElement(Element element, HashMap<String, Descriptor> varTable) {
         String instrStr = "";
 
-        int loads = 1;
-
         if (element.isLiteral()) {
             LiteralElement literalElement = (LiteralElement) element;
 
@@ -219,8 +230,7 @@ public class JasminUtils {
                             instrStr += "aload" + (id <= 3 ? '_' : ' ') + id + "\n\t";
                             instrStr += loadArrayIndexes((ArrayOperand) operand, varTable);
                             instrStr += "iaload";
-                            loads += 2;
-                        } else {
+                                } else {
                             instrStr = getIload(id);
                         }
                         break;
@@ -247,13 +257,11 @@ public class JasminUtils {
                 if (isArrayOperand) {
                     instrStr += "\n\t" + loadArrayIndexes((ArrayOperand) operand, varTable);
                     instrStr += "iaload";
-                    loads += 2;
                 }
             }
         }
 
         instrStr += "\n";
-        this.currentStack += loads;
 
         return instrStr;
     }
@@ -288,6 +296,10 @@ public class JasminUtils {
 
     //Check if the number can be divided by 2 repeatedly until it becomes 1 (check numShifts)
     public int checkIfIsPower2(int number) {
+        // Zero and negative numbers are never a power of 2, and zero would never stop dividing
+        if (number <= 0) {
+            return -1;
+        }
         int acc = 0;
         while (number % 2 == 0) {
             number /= 2;
@@ -301,30 +313,13 @@ public class JasminUtils {
         }
     }
 
-    //Code for stack that didn't have in previous checkpoint
-    public int getStackLimit() {
-        return this.stackLimit;
-    }
-
-    public int getCurrentStack() {
-        return this.currentStack;
-    }
-
-    public void updateStackLimit() {
-        this.stackLimit = Math.max(this.stackLimit, this.currentStack);
-    }
-
-    public void addCurrentStack() {
-        this.currentStack++;
-    }
-
-    public void subCurrentStack() {
-        this.currentStack--;
+    //Labels for the conditional code only need to be unique inside the class being generated
+    public int getConditionalId() {
+        return this.conditionalId;
     }
 
-    public void resetStack(){
-        this.currentStack = 0;
-        this.stackLimit = 0;
+    public void nextConditionalId() {
+        this.conditionalId++;
     }
 
     public String getJasminReturnType(ElementType elementType) throws NotImplementedException {
@@ -0,0 +1,677 @@
+package pt.up.fe.comp2023.jasmin;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static pt.up.fe.comp2023.jasmin.Opcodes.*;
+
+// Translates a ClassUnit straight to JVM bytecode, with the same semantics as OllirToJasmin and JasminInstruction,
+// without going through the Jasmin text and assembler
+public class OllirToClassFile {
+
+    private final ClassUnit classUnit;
+    private final JasminUtils jasminUtils;
+    private final String className;
+    private final ClassFileWriter writer;
+
+    // State of the method being translated
+    private HashMap<String, Descriptor> varTable;
+    private ClassFileWriter.Code code;
+    private int labelId;
+
+    public OllirToClassFile(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+        this.jasminUtils = new JasminUtils(classUnit);
+        this.className = classUnit.getPackage() != null
+                ? classUnit.getPackage().replace('.', '/') + "/" + classUnit.getClassName()
+                : classUnit.getClassName();
+        this.writer = new ClassFileWriter(
+                accessFlags(classUnit.getClassAccessModifier(), classUnit.isStaticClass(), classUnit.isFinalClass()) | ClassFileWriter.ACC_SUPER,
+                className, getClassName(classUnit.getSuperClass()));
+    }
+
+    public byte[] getBytes() {
+        for (Field field : classUnit.getFields()) {
+            writer.addField(accessFlags(field.getFieldAccessModifier(), field.isStaticField(), field.isFinalField()),
+                    field.getFieldName(), getDescriptor(field.getFieldType()));
+        }
+
+        for (Method method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) {
+                createConstructMethod();
+            } else {
+                createMethod(method);
+            }
+        }
+
+        return writer.toByteArray();
+    }
+
+    private int accessFlags(AccessModifiers accessModifier, boolean isStatic, boolean isFinal) {
+        int flags = 0;
+        switch (accessModifier) {
+            case PUBLIC:
+                flags |= ClassFileWriter.ACC_PUBLIC;
+                break;
+            case PRIVATE:
+                flags |= ClassFileWriter.ACC_PRIVATE;
+                break;
+            case PROTECTED:
+                flags |= ClassFileWriter.ACC_PROTECTED;
+                break;
+            case DEFAULT:
+                break;
+        }
+        if (isStatic) {
+            flags |= ClassFileWriter.ACC_STATIC;
+        }
+        if (isFinal) {
+            flags |= ClassFileWriter.ACC_FINAL;
+        }
+        return flags;
+    }
+
+    // Same constructor as the Jasmin backend, the body of .construct only calls the super constructor
+    private void createConstructMethod() {
+        code = new ClassFileWriter.Code();
+        code.useLocal(0, 1);
+        code.op(ALOAD_0);
+        code.member(INVOKESPECIAL, writer.methodRef(getClassName(classUnit.getSuperClass()), "<init>", "()V"), "()V");
+        code.op(RETURN);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", code);
+    }
+
+    private void createMethod(Method method) {
+        JasminUtils.buildVarTable(method);
+        varTable = method.getVarTable();
+        code = new ClassFileWriter.Code();
+        labelId = 0;
+
+        code.useLocal(0, (method.isStaticMethod() ? 0 : 1) + method.getParams().size());
+        for (Descriptor descriptor : varTable.values()) {
+            if (descriptor.getScope() != VarScope.FIELD && descriptor.getVirtualReg() >= 0) {
+                code.useLocal(descriptor.getVirtualReg(), 1);
+            }
+        }
+
+        List<Instruction> instructions = method.getInstructions();
+        for (Instruction instruction : instructions) {
+            for (String label : method.getLabels(instruction)) {
+                code.label(label);
+            }
+            createInstruction(instruction, false);
+        }
+
+        // Void methods may end without an explicit ret.V
+        Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+        if (method.getReturnType().getTypeOfElement() == ElementType.VOID
+                && !(last instanceof ReturnInstruction) && !(last instanceof GotoInstruction)) {
+            code.op(RETURN);
+        }
+
+        int flags = accessFlags(method.getMethodAccessModifier(), method.isStaticMethod(), method.isFinalMethod());
+        writer.addMethod(flags, method.getMethodName(), getMethodDescriptor(method), code);
+    }
+
+    private String getMethodDescriptor(Method method) {
+        String params = method.getParams().stream().map(param -> getDescriptor(param.getType())).collect(Collectors.joining());
+        return "(" + params + ")" + getDescriptor(method.getReturnType());
+    }
+
+    // Types
+
+    private String getClassName(String name) {
+        if (name == null) {
+            return "java/lang/Object";
+        }
+        if (name.equals(classUnit.getClassName())) {
+            return className;
+        }
+        return jasminUtils.getCodeFullName(name);
+    }
+
+    private String getDescriptor(Type type) {
+        switch (type.getTypeOfElement()) {
+            case INT32:
+                return "I";
+            case BOOLEAN:
+                return "Z";
+            case STRING:
+                return "Ljava/lang/String;";
+            case VOID:
+                return "V";
+            case ARRAYREF:
+                ArrayType arrayType = (ArrayType) type;
+                return "[".repeat(Math.max(1, arrayType.getNumDimensions())) + getDescriptor(arrayType.getElementType());
+            case OBJECTREF:
+            case CLASS:
+                return "L" + getClassName(((ClassType) type).getName()) + ";";
+            case THIS:
+                return "L" + className + ";";
+            default:
+                throw new NotImplementedException(type.getTypeOfElement());
+        }
+    }
+
+    private static boolean isReference(Type type) {
+        switch (type.getTypeOfElement()) {
+            case INT32:
+            case BOOLEAN:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private String getOwner(Element element) {
+        Type type = element.getType();
+        if (type.getTypeOfElement() == ElementType.THIS) {
+            return className;
+        }
+        if (type instanceof ClassType) {
+            return getClassName(((ClassType) type).getName());
+        }
+        return getClassName(((Operand) element).getName());
+    }
+
+    private String getFieldDescriptor(String fieldName, Type fallback) {
+        for (Field field : classUnit.getFields()) {
+            if (field.getFieldName().equals(fieldName)) {
+                return getDescriptor(field.getFieldType());
+            }
+        }
+        return getDescriptor(fallback);
+    }
+
+    private static String getName(Element element) {
+        if (element.isLiteral()) {
+            return ((LiteralElement) element).getLiteral().replace("\"", "");
+        }
+        return ((Operand) element).getName();
+    }
+
+    // Loads and stores
+
+    // Register of a local variable or parameter, -1 for fields of the class
+    private int getRegister(Operand operand) {
+        Descriptor descriptor = varTable.get(operand.getName());
+        if (descriptor != null && descriptor.getScope() != VarScope.FIELD) {
+            return descriptor.getVirtualReg();
+        }
+        if (operand.isParameter()) {
+            return operand.getParamId();
+        }
+        return -1;
+    }
+
+    private void localInstruction(int shortOpcode, int opcode, int register) {
+        if (register <= 3) {
+            code.op(shortOpcode + register);
+        } else if (register <= 255) {
+            code.op(opcode, register);
+        } else {
+            code.op(WIDE, opcode, register >> 8, register);
+        }
+    }
+
+    // Instruction whose operand is a two byte constant pool index
+    private void poolInstruction(int opcode, int index) {
+        code.op(opcode, index >> 8, index);
+    }
+
+    private void fieldInstruction(int opcode, String owner, String name, String descriptor) {
+        code.member(opcode, writer.fieldRef(owner, name, descriptor), descriptor);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.op(SIPUSH, value >> 8, value);
+        } else {
+            pushConstant(writer.integer(value));
+        }
+    }
+
+    private void pushConstant(int index) {
+        if (index <= 255) {
+            code.op(LDC, index);
+        } else {
+            code.op(LDC_W, index >> 8, index);
+        }
+    }
+
+    // Reference to the array of an ArrayOperand, without the index
+    private void loadArrayReference(ArrayOperand operand) {
+        int register = getRegister(operand);
+        if (register == -1) {
+            code.op(ALOAD_0);
+            fieldInstruction(GETFIELD, className, operand.getName(), getFieldDescriptor(operand.getName(), new ArrayType(1, ElementType.INT32)));
+        } else {
+            localInstruction(ALOAD_0, ALOAD, register);
+        }
+    }
+
+    private void load(Element element) {
+        if (element.isLiteral()) {
+            LiteralElement literal = (LiteralElement) element;
+            if (literal.getType().getTypeOfElement() == ElementType.STRING) {
+                pushConstant(writer.string(literal.getLiteral().replace("\"", "")));
+            } else {
+                pushInt(Integer.parseInt(literal.getLiteral()));
+            }
+            return;
+        }
+
+        Operand operand = (Operand) element;
+        if (operand.getType().getTypeOfElement() == ElementType.THIS) {
+            code.op(ALOAD_0);
+            return;
+        }
+
+        if (operand instanceof ArrayOperand) {
+            loadArrayReference((ArrayOperand) operand);
+            load(((ArrayOperand) operand).getIndexOperands().get(0));
+            code.op(isReference(operand.getType()) ? AALOAD : IALOAD);
+            return;
+        }
+
+        int register = getRegister(operand);
+        if (register == -1) {
+            code.op(ALOAD_0);
+            fieldInstruction(GETFIELD, className, operand.getName(), getFieldDescriptor(operand.getName(), operand.getType()));
+        } else if (isReference(operand.getType())) {
+            localInstruction(ALOAD_0, ALOAD, register);
+        } else {
+            localInstruction(ILOAD_0, ILOAD, register);
+        }
+    }
+
+    // Bytecode
+
+    private void createInstruction(Instruction instruction, boolean isAssign) {
+        switch (instruction.getInstType()) {
+            case ASSIGN:
+                createAssign((AssignInstruction) instruction);
+                break;
+            case CALL:
+                createCall((CallInstruction) instruction, isAssign);
+                break;
+            case GOTO:
+                code.branch(GOTO, ((GotoInstruction) instruction).getLabel());
+                break;
+            case BRANCH:
+                CondBranchInstruction branch = (CondBranchInstruction) instruction;
+                createConditionalJump(branch.getCondition(), branch.getLabel());
+                break;
+            case RETURN:
+                createReturn((ReturnInstruction) instruction);
+                break;
+            case PUTFIELD:
+                createPutField((PutFieldInstruction) instruction);
+                break;
+            case GETFIELD:
+                createGetField((GetFieldInstruction) instruction);
+                break;
+            case UNARYOPER:
+                createUnaryOp((UnaryOpInstruction) instruction);
+                break;
+            case BINARYOPER:
+                createBinaryOp((BinaryOpInstruction) instruction);
+                break;
+            case NOPER:
+                load(((SingleOpInstruction) instruction).getSingleOperand());
+                break;
+            default:
+                throw new NotImplementedException(instruction.getInstType());
+        }
+    }
+
+    private void createAssign(AssignInstruction assign) {
+        Operand dest = (Operand) assign.getDest();
+
+        if (dest instanceof ArrayOperand) {
+            loadArrayReference((ArrayOperand) dest);
+            load(((ArrayOperand) dest).getIndexOperands().get(0));
+            createInstruction(assign.getRhs(), true);
+            code.op(isReference(dest.getType()) ? AASTORE : IASTORE);
+            return;
+        }
+
+        int register = getRegister(dest);
+        if (register == -1) {
+            code.op(ALOAD_0);
+            createInstruction(assign.getRhs(), true);
+            fieldInstruction(PUTFIELD, className, dest.getName(), getFieldDescriptor(dest.getName(), dest.getType()));
+            return;
+        }
+
+        // A copy between variables the register allocation put in the same register does nothing
+        if (isCopyFrom(register, assign.getRhs())) {
+            return;
+        }
+
+        if (createIncrement(register, assign.getRhs())) {
+            return;
+        }
+
+        createInstruction(assign.getRhs(), true);
+        if (isReference(dest.getType())) {
+            localInstruction(ASTORE_0, ASTORE, register);
+        } else {
+            localInstruction(ISTORE_0, ISTORE, register);
+        }
+    }
+
+    private boolean isCopyFrom(int register, Instruction rhs) {
+        if (!(rhs instanceof SingleOpInstruction)) {
+            return false;
+        }
+        Element operand = ((SingleOpInstruction) rhs).getSingleOperand();
+        return !operand.isLiteral() && !(operand instanceof ArrayOperand) && getRegister((Operand) operand) == register;
+    }
+
+    // a := a + c and a := a - c become a single iinc
+    private boolean createIncrement(int register, Instruction rhs) {
+        if (!(rhs instanceof BinaryOpInstruction)) {
+            return false;
+        }
+
+        BinaryOpInstruction binaryOp = (BinaryOpInstruction) rhs;
+        OperationType opType = binaryOp.getOperation().getOpType();
+        Element left = binaryOp.getLeftOperand();
+        Element right = binaryOp.getRightOperand();
+
+        Element variable;
+        LiteralElement literal;
+        if (opType == OperationType.ADD && left.isLiteral() && !right.isLiteral()) {
+            variable = right;
+            literal = (LiteralElement) left;
+        } else if ((opType == OperationType.ADD || opType == OperationType.SUB) && !left.isLiteral() && right.isLiteral()) {
+            variable = left;
+            literal = (LiteralElement) right;
+        } else {
+            return false;
+        }
+
+        if (variable instanceof ArrayOperand || getRegister((Operand) variable) != register) {
+            return false;
+        }
+
+        int value = Integer.parseInt(literal.getLiteral());
+        if (opType == OperationType.SUB) {
+            value = -value;
+        }
+
+        if (register <= 255 && value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op(IINC, register, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.op(WIDE, IINC, register >> 8, register, value >> 8, value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void createCall(CallInstruction call, boolean isAssign) {
+        Element firstArg = call.getFirstArg();
+        List<Element> operands = call.getListOfOperands();
+        Type returnType = call.getReturnType();
+
+        switch (call.getInvocationType()) {
+            case invokestatic:
+            case invokevirtual:
+            case invokespecial: {
+                boolean isStatic = call.getInvocationType() == CallType.invokestatic;
+                if (!isStatic) {
+                    load(firstArg);
+                }
+                operands.forEach(this::load);
+
+                String owner = isStatic ? getClassName(((Operand) firstArg).getName()) : getOwner(firstArg);
+                String params = operands.stream().map(operand -> getDescriptor(operand.getType())).collect(Collectors.joining());
+                String descriptor = "(" + params + ")" + getDescriptor(returnType);
+
+                int opcode = isStatic ? INVOKESTATIC : call.getInvocationType() == CallType.invokevirtual ? INVOKEVIRTUAL : INVOKESPECIAL;
+                code.member(opcode, writer.methodRef(owner, getName(call.getSecondArg()), descriptor), descriptor);
+                break;
+            }
+            case NEW:
+                if (firstArg.getType().getTypeOfElement() == ElementType.ARRAYREF) {
+                    load(operands.get(0));
+                    code.op(NEWARRAY, T_INT);
+                } else {
+                    poolInstruction(NEW, writer.classRef(getClassName(((Operand) firstArg).getName())));
+                }
+                break;
+            case arraylength:
+                load(firstArg);
+                code.op(ARRAYLENGTH);
+                break;
+            case ldc:
+                load(firstArg);
+                break;
+            default:
+                throw new NotImplementedException(call.getInvocationType());
+        }
+
+        // Values of calls used as statements are discarded
+        if (!isAssign && returnType.getTypeOfElement() != ElementType.VOID) {
+            code.op(POP);
+        }
+    }
+
+    private void createGetField(GetFieldInstruction getField) {
+        String fieldName = getName(getField.getSecondOperand());
+        load(getField.getFirstOperand());
+        fieldInstruction(GETFIELD, getOwner(getField.getFirstOperand()), fieldName, getFieldDescriptor(fieldName, getField.getFieldType()));
+    }
+
+    private void createPutField(PutFieldInstruction putField) {
+        String fieldName = getName(putField.getSecondOperand());
+        load(putField.getFirstOperand());
+        load(putField.getThirdOperand());
+        fieldInstruction(PUTFIELD, getOwner(putField.getFirstOperand()), fieldName, getFieldDescriptor(fieldName, putField.getThirdOperand().getType()));
+    }
+
+    private void createReturn(ReturnInstruction returnInstruction) {
+        if (!returnInstruction.hasReturnValue()) {
+            code.op(RETURN);
+            return;
+        }
+        load(returnInstruction.getOperand());
+        code.op(isReference(returnInstruction.getOperand().getType()) ? ARETURN : IRETURN);
+    }
+
+    private void createUnaryOp(UnaryOpInstruction unaryOp) {
+        switch (unaryOp.getOperation().getOpType()) {
+            case NOT:
+            case NOTB:
+                load(unaryOp.getOperand());
+                code.op(ICONST_1);
+                code.op(IXOR);
+                break;
+            default:
+                throw new NotImplementedException(unaryOp.getOperation().getOpType());
+        }
+    }
+
+    private void createBinaryOp(BinaryOpInstruction binaryOp) {
+        OperationType opType = binaryOp.getOperation().getOpType();
+
+        if (isComparison(opType)) {
+            // Comparisons produce 0 or 1
+            String trueLabel = newLabel();
+            String endLabel = newLabel();
+            createComparisonJump(opType, binaryOp.getLeftOperand(), binaryOp.getRightOperand(), trueLabel);
+            code.op(ICONST_0);
+            code.branch(GOTO, endLabel);
+            code.label(trueLabel);
+            code.op(ICONST_1);
+            code.label(endLabel);
+            return;
+        }
+
+        int opcode;
+        switch (opType) {
+            case ADD:
+                opcode = IADD;
+                break;
+            case SUB:
+                opcode = ISUB;
+                break;
+            case MUL:
+                opcode = IMUL;
+                break;
+            case DIV:
+                opcode = IDIV;
+                break;
+            case SHL:
+                opcode = ISHL;
+                break;
+            case SHR:
+                opcode = ISHR;
+                break;
+            // Booleans are always 0 or 1 and OLLIR operands have no side effects, so no short-circuit is needed
+            case AND:
+            case ANDB:
+                opcode = IAND;
+                break;
+            case OR:
+            case ORB:
+                opcode = IOR;
+                break;
+            case XOR:
+                opcode = IXOR;
+                break;
+            default:
+                throw new NotImplementedException(opType);
+        }
+
+        load(binaryOp.getLeftOperand());
+        load(binaryOp.getRightOperand());
+        code.op(opcode);
+    }
+
+    // Jumps
+
+    // Internal labels cannot clash with OLLIR labels, which are identifiers
+    private String newLabel() {
+        return "#" + labelId++;
+    }
+
+    private static boolean isComparison(OperationType opType) {
+        switch (opType) {
+            case LTH:
+            case GTH:
+            case LTE:
+            case GTE:
+            case EQ:
+            case NEQ:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isZero(Element element) {
+        return element.isLiteral() && ((LiteralElement) element).getLiteral().equals("0");
+    }
+
+    // Jumps to the label when the comparison holds, comparisons against 0 use the single operand instructions
+    private void createComparisonJump(OperationType opType, Element left, Element right, String label) {
+        if (isZero(right)) {
+            load(left);
+            code.branch(getZeroBranch(opType), label);
+        } else if (isZero(left)) {
+            load(right);
+            code.branch(getZeroBranch(swap(opType)), label);
+        } else {
+            load(left);
+            load(right);
+            code.branch(getZeroBranch(opType) - IFEQ + IF_ICMPEQ, label);
+        }
+    }
+
+    private static int getZeroBranch(OperationType opType) {
+        switch (opType) {
+            case LTH:
+                return IFLT;
+            case GTH:
+                return IFGT;
+            case LTE:
+                return IFLE;
+            case GTE:
+                return IFGE;
+            case EQ:
+                return IFEQ;
+            case NEQ:
+                return IFNE;
+            default:
+                throw new NotImplementedException(opType);
+        }
+    }
+
+    // Comparison with the operands in the opposite order
+    private static OperationType swap(OperationType opType) {
+        switch (opType) {
+            case LTH:
+                return OperationType.GTH;
+            case GTH:
+                return OperationType.LTH;
+            case LTE:
+                return OperationType.GTE;
+            case GTE:
+                return OperationType.LTE;
+            default:
+                return opType;
+        }
+    }
+
+    // Conditions of branches jump directly instead of computing a boolean first
+    private void createConditionalJump(Instruction condition, String label) {
+        if (condition instanceof BinaryOpInstruction) {
+            BinaryOpInstruction binaryOp = (BinaryOpInstruction) condition;
+            OperationType opType = binaryOp.getOperation().getOpType();
+
+            if (isComparison(opType)) {
+                createComparisonJump(opType, binaryOp.getLeftOperand(), binaryOp.getRightOperand(), label);
+                return;
+            }
+            if (opType == OperationType.ANDB || opType == OperationType.AND) {
+                String skipLabel = newLabel();
+                load(binaryOp.getLeftOperand());
+                code.branch(IFEQ, skipLabel);
+                load(binaryOp.getRightOperand());
+                code.branch(IFNE, label);
+                code.label(skipLabel);
+                return;
+            }
+            if (opType == OperationType.ORB || opType == OperationType.OR) {
+                load(binaryOp.getLeftOperand());
+                code.branch(IFNE, label);
+                load(binaryOp.getRightOperand());
+                code.branch(IFNE, label);
+                return;
+            }
+        }
+
+        if (condition instanceof UnaryOpInstruction) {
+            OperationType opType = ((UnaryOpInstruction) condition).getOperation().getOpType();
+            if (opType == OperationType.NOT || opType == OperationType.NOTB) {
+                load(((UnaryOpInstruction) condition).getOperand());
+                code.branch(IFEQ, label);
+                return;
+            }
+        }
+
+        createInstruction(condition, true);
+        code.branch(IFNE, label);
+    }
+}
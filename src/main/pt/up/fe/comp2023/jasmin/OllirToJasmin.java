@@ -1,6 +1,11 @@
 package pt.up.fe.comp2023.jasmin;
 
 import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.CompilationStats;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -9,22 +14,50 @@ public class OllirToJasmin {
 
     private final ClassUnit classUnit;
     private final JasminUtils jasminUtils;
+    private final boolean optimize;
+    private long instructionCount;
+    private final Map<String, Integer> peepholeRules = new LinkedHashMap<>();
 
     public OllirToJasmin(ClassUnit classUnit) {
+        this(classUnit, false);
+    }
+
+    // With optimize, the code of each method goes through the peephole rules of JasminPeephole
+    public OllirToJasmin(ClassUnit classUnit, boolean optimize) {
         this.classUnit = classUnit;
         this.jasminUtils = new JasminUtils(this.classUnit);
+        this.optimize = optimize;
     }
 
     public String getCode() {
-        var code = new StringBuilder();
+        var code = new StringWriter();
+        try {
+            writeCode(code);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return code.toString();
+    }
 
-        JasminInstruction.reset();
+    // Writes the class one method at a time, only the code of the current method is kept in memory
+    public void writeCode(Writer out) throws IOException {
+        out.write(createJasminHeader());
+        out.write(createJasminFields());
 
-        code.append(createJasminHeader());
-        code.append(createJasminFields());
-        code.append(createJasminMethods());
+        for (Method method : classUnit.getMethods()) {
+            out.write(getCode(method));
+        }
+        out.flush();
+    }
 
-        return code.toString();
+    // Number of Jasmin instructions written so far, labels and directives excluded
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    // How many times each peephole rule was applied so far
+    public Map<String, Integer> getPeepholeRules() {
+        return peepholeRules;
     }
 
     // Verify if variable is Default, Static or Final
@@ -110,33 +143,20 @@ public class OllirToJasmin {
         return String.format(".method public <init>()V\n" + "   aload_0\n" + "   invokenonvirtual %s/<init>()V\n" + "   return\n" + ".end method\n", superClassName);
     }
 
-    public String createJasminMethods() {
-        var code = new StringBuilder();
-        ArrayList<Method> methods = classUnit.getMethods();
-
-        for (Method method : methods) {
-            code.append(getCode(method));
-        }
-
-        return code.toString();
-    }
-
     public String createMethodBody(Method method) {
         var code = new StringBuilder();
-        String methodBody = "";
-        int instruction_stack = 0;
-        int limit_stack = 0;
+        var methodBody = new StringBuilder();
 
         String accessSpecs = createAccessSpecs(method.getMethodAccessModifier().name(), method.isStaticMethod(), method.isFinalMethod());
         code.append(accessSpecs + method.getMethodName() + '(');
-        method.buildVarTable();
+        JasminUtils.buildVarTable(method);
 
         var paramsTypes = method.getParams().stream().map(element -> jasminUtils.getJasminType(element.getType(), true)).collect(Collectors.joining());
         code.append(paramsTypes).append(")").append(jasminUtils.getJasminType(method.getReturnType(), true) + '\n');
 
-        int limitLocals =  method.getVarTable().size() + (method.getVarTable().containsKey("this") || method.isStaticMethod() ? 0 : 1);
+        int limitLocals = JasminUtils.getLocalsLimit(method);
 
-        this.jasminUtils.resetStack();
+        JasminInstruction jasminInstruction = new JasminInstruction(classUnit, method, jasminUtils);
 
         for (int i = 0; i < method.getInstructions().size(); i++) {
 
@@ -144,14 +164,26 @@ public class OllirToJasmin {
                 method.getInstr(i).addSucc(method.getInstr(i+1));
             }
 
-            JasminInstruction jasminInstruction = new JasminInstruction(classUnit, method);
+            methodBody.append(jasminInstruction.getCode(method.getInstr(i)));
+        }
+
+        if (optimize) {
+            JasminPeephole peephole = new JasminPeephole();
+            List<String> lines = peephole.optimize(methodBody.toString().lines().collect(Collectors.toList()));
+            methodBody.setLength(0);
+            for (String line : lines) {
+                methodBody.append(line.endsWith(":") ? line : "\t" + line).append('\n');
+            }
+            peephole.getApplied().forEach((rule, applied) -> peepholeRules.merge(rule, applied, Integer::sum));
+        }
 
-            methodBody += jasminInstruction.getCode(method.getInstr(i));
-            instruction_stack = jasminInstruction.getStackLimit();
-            limit_stack = Math.max(instruction_stack, limit_stack);
+        if (CompilationStats.isRecording()) {
+            instructionCount += methodBody.toString().lines().filter(line -> line.startsWith("\t") && !line.startsWith("\t.")).count();
         }
 
-        code.append("\t.limit stack "+ limit_stack +"\n");
+        // The stack limit follows the final code, after the peephole rules changed it
+        int limitStack = JasminStack.maxStack(methodBody.toString().lines().collect(Collectors.toList()));
+        code.append("\t.limit stack " + limitStack + "\n");
         code.append("\t.limit locals " + limitLocals + "\n");
         code.append(methodBody);
 
@@ -0,0 +1,281 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// JVM opcodes used by the backends, with their Jasmin names and their effect on the operand stack. The class-file
+// backend emits the opcodes and the Jasmin backend reads the names back, and both get the stack limit from this table
+final class Opcodes {
+
+    static final int NOP = 0x00;
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_M1 = 0x02;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ILOAD_0 = 0x1a;
+    static final int ALOAD_0 = 0x2a;
+    static final int IALOAD = 0x2e;
+    static final int AALOAD = 0x32;
+    static final int BALOAD = 0x33;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int ISTORE_0 = 0x3b;
+    static final int ASTORE_0 = 0x4b;
+    static final int IASTORE = 0x4f;
+    static final int AASTORE = 0x53;
+    static final int BASTORE = 0x54;
+
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int SWAP = 0x5f;
+
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IREM = 0x70;
+    static final int INEG = 0x74;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7a;
+    static final int IUSHR = 0x7c;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IINC = 0x84;
+
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int IF_ACMPEQ = 0xa5;
+    static final int IF_ACMPNE = 0xa6;
+    static final int GOTO = 0xa7;
+
+    static final int IRETURN = 0xac;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int NEWARRAY = 0xbc;
+    static final int ANEWARRAY = 0xbd;
+    static final int ARRAYLENGTH = 0xbe;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+    static final int INSTANCEOF = 0xc1;
+    static final int WIDE = 0xc4;
+    static final int IFNULL = 0xc6;
+    static final int IFNONNULL = 0xc7;
+
+    // Operand of newarray
+    static final int T_INT = 10;
+
+    // Stack effect of the invokes and the field instructions, which depends on their descriptor
+    private static final int BY_DESCRIPTOR = Integer.MIN_VALUE;
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    private static final String[] NAMES = new String[256];
+    private static final int[] STACK_DELTAS = new int[256];
+    private static final Map<String, Integer> BY_NAME = new HashMap<>();
+
+    static {
+        Arrays.fill(STACK_DELTAS, UNKNOWN);
+
+        define(NOP, "nop", 0);
+        define(ACONST_NULL, "aconst_null", 1);
+        for (int value = -1; value <= 5; value++) {
+            define(ICONST_0 + value, value == -1 ? "iconst_m1" : "iconst_" + value, 1);
+        }
+        define(BIPUSH, "bipush", 1);
+        define(SIPUSH, "sipush", 1);
+        define(LDC, "ldc", 1);
+        define(LDC_W, "ldc_w", 1);
+
+        define(ILOAD, "iload", 1);
+        define(ALOAD, "aload", 1);
+        define(ISTORE, "istore", -1);
+        define(ASTORE, "astore", -1);
+        for (int register = 0; register <= 3; register++) {
+            define(ILOAD_0 + register, "iload_" + register, 1);
+            define(ALOAD_0 + register, "aload_" + register, 1);
+            define(ISTORE_0 + register, "istore_" + register, -1);
+            define(ASTORE_0 + register, "astore_" + register, -1);
+        }
+        define(IALOAD, "iaload", -1);
+        define(AALOAD, "aaload", -1);
+        define(BALOAD, "baload", -1);
+        define(IASTORE, "iastore", -3);
+        define(AASTORE, "aastore", -3);
+        define(BASTORE, "bastore", -3);
+
+        define(POP, "pop", -1);
+        define(DUP, "dup", 1);
+        define(SWAP, "swap", 0);
+
+        define(IADD, "iadd", -1);
+        define(ISUB, "isub", -1);
+        define(IMUL, "imul", -1);
+        define(IDIV, "idiv", -1);
+        define(IREM, "irem", -1);
+        define(INEG, "ineg", 0);
+        define(ISHL, "ishl", -1);
+        define(ISHR, "ishr", -1);
+        define(IUSHR, "iushr", -1);
+        define(IAND, "iand", -1);
+        define(IOR, "ior", -1);
+        define(IXOR, "ixor", -1);
+        define(IINC, "iinc", 0);
+
+        define(IFEQ, "ifeq", -1);
+        define(IFNE, "ifne", -1);
+        define(IFLT, "iflt", -1);
+        define(IFGE, "ifge", -1);
+        define(IFGT, "ifgt", -1);
+        define(IFLE, "ifle", -1);
+        define(IF_ICMPEQ, "if_icmpeq", -2);
+        define(IF_ICMPNE, "if_icmpne", -2);
+        define(IF_ICMPLT, "if_icmplt", -2);
+        define(IF_ICMPGE, "if_icmpge", -2);
+        define(IF_ICMPGT, "if_icmpgt", -2);
+        define(IF_ICMPLE, "if_icmple", -2);
+        define(IF_ACMPEQ, "if_acmpeq", -2);
+        define(IF_ACMPNE, "if_acmpne", -2);
+        define(GOTO, "goto", 0);
+        define(IFNULL, "ifnull", -1);
+        define(IFNONNULL, "ifnonnull", -1);
+
+        define(IRETURN, "ireturn", -1);
+        define(ARETURN, "areturn", -1);
+        define(RETURN, "return", 0);
+        define(ATHROW, "athrow", -1);
+
+        define(GETSTATIC, "getstatic", BY_DESCRIPTOR);
+        define(PUTSTATIC, "putstatic", BY_DESCRIPTOR);
+        define(GETFIELD, "getfield", BY_DESCRIPTOR);
+        define(PUTFIELD, "putfield", BY_DESCRIPTOR);
+        define(INVOKEVIRTUAL, "invokevirtual", BY_DESCRIPTOR);
+        define(INVOKESPECIAL, "invokespecial", BY_DESCRIPTOR);
+        define(INVOKESTATIC, "invokestatic", BY_DESCRIPTOR);
+        // Older Jasmin name of invokespecial, used by the default constructor
+        BY_NAME.put("invokenonvirtual", INVOKESPECIAL);
+        define(NEW, "new", 1);
+        define(NEWARRAY, "newarray", 0);
+        define(ANEWARRAY, "anewarray", 0);
+        define(ARRAYLENGTH, "arraylength", 0);
+        define(CHECKCAST, "checkcast", 0);
+        define(INSTANCEOF, "instanceof", 0);
+    }
+
+    private Opcodes() {
+    }
+
+    private static void define(int opcode, String name, int stackDelta) {
+        NAMES[opcode] = name;
+        STACK_DELTAS[opcode] = stackDelta;
+        BY_NAME.put(name, opcode);
+    }
+
+    // Opcode of a Jasmin instruction name, -1 for names not in the table
+    static int fromName(String name) {
+        return BY_NAME.getOrDefault(name, -1);
+    }
+
+    static boolean isKnown(int opcode) {
+        return opcode >= 0 && opcode < NAMES.length && NAMES[opcode] != null;
+    }
+
+    static boolean needsDescriptor(int opcode) {
+        return isKnown(opcode) && STACK_DELTAS[opcode] == BY_DESCRIPTOR;
+    }
+
+    static int stackDelta(int opcode) {
+        if (!isKnown(opcode) || needsDescriptor(opcode)) {
+            throw new IllegalArgumentException("No fixed stack effect for opcode " + opcode);
+        }
+        return STACK_DELTAS[opcode];
+    }
+
+    // Stack effect of an invoke, given the method descriptor, or of a field instruction, given the field descriptor
+    static int stackDelta(int opcode, String descriptor) {
+        switch (opcode) {
+            case GETSTATIC:
+                return slots(descriptor);
+            case PUTSTATIC:
+                return -slots(descriptor);
+            case GETFIELD:
+                return slots(descriptor) - 1;
+            case PUTFIELD:
+                return -slots(descriptor) - 1;
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+                return invokeDelta(opcode, descriptor);
+            default:
+                return stackDelta(opcode);
+        }
+    }
+
+    static boolean isBranch(int opcode) {
+        return (opcode >= IFEQ && opcode <= GOTO) || opcode == IFNULL || opcode == IFNONNULL;
+    }
+
+    // Whether the next instruction can run after this one, false for goto, the returns and athrow
+    static boolean fallsThrough(int opcode) {
+        return opcode != GOTO && !(opcode >= IRETURN && opcode <= RETURN) && opcode != ATHROW;
+    }
+
+    // Arguments and receiver are popped and the result, if any, pushed
+    private static int invokeDelta(int opcode, String descriptor) {
+        int delta = opcode == INVOKESTATIC ? 0 : -1;
+
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            int start = i;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            delta -= slots(descriptor.substring(start, i + 1));
+            i++;
+        }
+
+        return delta + slots(descriptor.substring(i + 1));
+    }
+
+    // Stack slots taken by a value of the given type descriptor
+    private static int slots(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'V':
+                return 0;
+            case 'J':
+            case 'D':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+}
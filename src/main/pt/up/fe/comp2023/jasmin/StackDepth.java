@@ -0,0 +1,56 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+// Maximum depth of the operand stack of a method, found by following the depth through every branch and
+// fall-through edge from the first instruction, as the JVM verifier does. The result is the largest depth any
+// reachable instruction finds or leaves, so it holds exactly what the code needs. Used by both backends.
+final class StackDepth {
+
+    // One instruction, with its effect on the depth of the stack and the index of the instruction it may jump to,
+    // -1 when it does not jump
+    record Step(int stackDelta, int target, boolean fallsThrough) {
+    }
+
+    private StackDepth() {
+    }
+
+    static int maxStack(List<Step> steps) {
+        int[] depthBefore = new int[steps.size()];
+        Arrays.fill(depthBefore, -1);
+        Deque<Integer> worklist = new ArrayDeque<>();
+        int maxStack = 0;
+
+        if (!steps.isEmpty()) {
+            depthBefore[0] = 0;
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.pop();
+            Step step = steps.get(index);
+            int depthAfter = depthBefore[index] + step.stackDelta();
+            maxStack = Math.max(maxStack, Math.max(depthBefore[index], depthAfter));
+
+            // The verifier requires the same depth wherever paths meet, so the first one found is enough
+            if (step.fallsThrough()) {
+                visit(index + 1, depthAfter, depthBefore, worklist);
+            }
+            if (step.target() != -1) {
+                visit(step.target(), depthAfter, depthBefore, worklist);
+            }
+        }
+
+        return maxStack;
+    }
+
+    private static void visit(int index, int depth, int[] depthBefore, Deque<Integer> worklist) {
+        if (index < depthBefore.length && depthBefore[index] == -1) {
+            depthBefore[index] = depth;
+            worklist.push(index);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package pt.up.fe.comp2023.ollir;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2023.semantic.Identifiers;
+import pt.up.fe.comp2023.semantic.Scope;
+import pt.up.fe.comp2023.semantic.Types;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Replaces the int and boolean locals that hold a known constant by that constant, and folds the operators whose
+// operands are all literals, until neither changes the AST. Statements are followed in order: the branches of an
+// if start from the constants known before it and keep the ones they agree on, and a local assigned anywhere in
+// a loop is not constant in its condition, its body or after it.
+public class ConstantPropagator {
+
+    static final Set<String> STATEMENTS = Set.of("StmtBlock", "Conditional", "WhileLoop", "ExprStmt",
+            "Assignment", "ArrayAssignment");
+
+    private Scope scope;
+    private boolean changed;
+    private int folded;
+
+    // Propagates and folds the constants of the method until nothing changes, returns whether anything did
+    public boolean optimize(JmmNode method) {
+        scope = (Scope) method.getObject(Scope.ATTRIBUTE);
+        boolean optimized = false;
+        do {
+            changed = false;
+            Map<Integer, JmmNode> constants = new HashMap<>();
+            for (int i = 0; i < method.getNumChildren(); i++) {
+                JmmNode child = method.getJmmChild(i);
+                if (STATEMENTS.contains(child.getKind())) {
+                    visitStatement(child, constants);
+                } else if (method.getKind().equals("InstanceMethod") && i == method.getNumChildren() - 1) {
+                    // The returned expression
+                    visitExpression(child, constants);
+                }
+            }
+            optimized |= changed;
+        } while (changed);
+        return optimized;
+    }
+
+    // How many expressions were replaced by a literal
+    public int getFolded() {
+        return folded;
+    }
+
+    // Statements
+
+    private void visitStatement(JmmNode node, Map<Integer, JmmNode> constants) {
+        switch (node.getKind()) {
+            case "StmtBlock":
+                for (JmmNode statement : node.getChildren()) {
+                    visitStatement(statement, constants);
+                }
+                break;
+            case "Conditional":
+                visitConditional(node, constants);
+                break;
+            case "WhileLoop":
+                visitWhileLoop(node, constants);
+                break;
+            case "Assignment":
+                visitAssignment(node, constants);
+                break;
+            default:
+                // ExprStmt and ArrayAssignment only read variables
+                for (int i = 0; i < node.getNumChildren(); i++) {
+                    visitExpression(node.getJmmChild(i), constants);
+                }
+                break;
+        }
+    }
+
+    private void visitConditional(JmmNode node, Map<Integer, JmmNode> constants) {
+        visitExpression(node.getJmmChild(0), constants);
+
+        Map<Integer, JmmNode> thenConstants = new HashMap<>(constants);
+        visitStatement(node.getJmmChild(1), thenConstants);
+        Map<Integer, JmmNode> elseConstants = new HashMap<>(constants);
+        visitStatement(node.getJmmChild(2), elseConstants);
+
+        constants.clear();
+        thenConstants.forEach((nameId, literal) -> {
+            JmmNode other = elseConstants.get(nameId);
+            if (other != null && sameLiteral(literal, other)) {
+                constants.put(nameId, literal);
+            }
+        });
+    }
+
+    private void visitWhileLoop(JmmNode node, Map<Integer, JmmNode> constants) {
+        constants.keySet().removeAll(assignedLocals(node.getJmmChild(1)));
+        visitExpression(node.getJmmChild(0), constants);
+        visitStatement(node.getJmmChild(1), new HashMap<>(constants));
+    }
+
+    private void visitAssignment(JmmNode node, Map<Integer, JmmNode> constants) {
+        JmmNode value = visitExpression(node.getJmmChild(0), constants);
+        int nameId = Identifiers.id(node, "var");
+        if (isConstantLocal(nameId) && isLiteral(value)) {
+            constants.put(nameId, value);
+        } else {
+            constants.remove(nameId);
+        }
+    }
+
+    // Locals assigned by the statement or by any statement inside it
+    private Set<Integer> assignedLocals(JmmNode statement) {
+        Set<Integer> assigned = new HashSet<>();
+        Deque<JmmNode> nodes = new ArrayDeque<>();
+        nodes.push(statement);
+        while (!nodes.isEmpty()) {
+            JmmNode node = nodes.pop();
+            if (node.getKind().equals("Assignment")) {
+                assigned.add(Identifiers.id(node, "var"));
+            } else if (STATEMENTS.contains(node.getKind())) {
+                node.getChildren().forEach(nodes::push);
+            }
+        }
+        return assigned;
+    }
+
+    // Expressions
+
+    // Visits the operands before their operator with an explicit stack, so very deep expressions do not overflow
+    // the stack, and returns the node that replaced the expression, or the expression itself
+    private JmmNode visitExpression(JmmNode expression, Map<Integer, JmmNode> constants) {
+        JmmNode parent = expression.getJmmParent();
+        int index = expression.getIndexOfSelf();
+
+        Deque<JmmNode> pending = new ArrayDeque<>();
+        Deque<JmmNode> visited = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            JmmNode node = pending.pop();
+            visited.push(node);
+            node.getChildren().forEach(pending::push);
+        }
+
+        // Every node comes out after all of its operands
+        while (!visited.isEmpty()) {
+            JmmNode node = visited.pop();
+            JmmNode replacement = node.getKind().equals("Identifier") ? propagate(node, constants) : fold(node);
+            if (replacement != null) {
+                node.replace(replacement);
+                changed = true;
+                folded++;
+            }
+        }
+        return parent.getJmmChild(index);
+    }
+
+    private JmmNode propagate(JmmNode identifier, Map<Integer, JmmNode> constants) {
+        JmmNode literal = constants.get(Identifiers.id(identifier, "value"));
+        return literal != null ? newLiteral(literal.getKind(), literal.get("value")) : null;
+    }
+
+    private JmmNode fold(JmmNode node) {
+        switch (node.getKind()) {
+            case "PrioExpr":
+                return isLiteral(node.getJmmChild(0)) ? node.getJmmChild(0) : null;
+            case "UnaryOp":
+                JmmNode operand = node.getJmmChild(0);
+                if (!operand.getKind().equals("BoolExpr")) {
+                    return null;
+                }
+                return newBoolean(!isTrue(operand));
+            case "BinaryOp":
+                return foldBinaryOp(node.get("op"), node.getJmmChild(0), node.getJmmChild(1));
+            default:
+                return null;
+        }
+    }
+
+    private JmmNode foldBinaryOp(String op, JmmNode left, JmmNode right) {
+        if (left.getKind().equals("BoolExpr") && right.getKind().equals("BoolExpr")) {
+            switch (op) {
+                case "&&":
+                    return newBoolean(isTrue(left) && isTrue(right));
+                case "||":
+                    return newBoolean(isTrue(left) || isTrue(right));
+                default:
+                    return null;
+            }
+        }
+
+        if (!left.getKind().equals("Integer") || !right.getKind().equals("Integer")) {
+            return null;
+        }
+        int a;
+        int b;
+        try {
+            a = Integer.parseInt(left.get("value"));
+            b = Integer.parseInt(right.get("value"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        switch (op) {
+            case "+":
+                return newInteger(a + b);
+            case "-":
+                return newInteger(a - b);
+            case "*":
+                return newInteger(a * b);
+            case "/":
+                // Division by zero is left for the program to throw
+                return b != 0 ? newInteger(a / b) : null;
+            case "<":
+                return newBoolean(a < b);
+            case ">":
+                return newBoolean(a > b);
+            default:
+                return null;
+        }
+    }
+
+    // Helpers
+
+    // Only int and boolean locals are propagated, parameters and fields may change between the statements
+    private boolean isConstantLocal(int nameId) {
+        Symbol local = scope.getLocal(nameId);
+        return local != null && (local.getType() == Types.INT || local.getType() == Types.BOOLEAN);
+    }
+
+    static boolean isLiteral(JmmNode node) {
+        return node.getKind().equals("Integer") || node.getKind().equals("BoolExpr");
+    }
+
+    private static boolean isTrue(JmmNode bool) {
+        return bool.get("value").equals("true");
+    }
+
+    private static boolean sameLiteral(JmmNode a, JmmNode b) {
+        return a.getKind().equals(b.getKind()) && a.get("value").equals(b.get("value"));
+    }
+
+    private static JmmNode newInteger(int value) {
+        return newLiteral("Integer", String.valueOf(value));
+    }
+
+    private static JmmNode newBoolean(boolean value) {
+        return newLiteral("BoolExpr", String.valueOf(value));
+    }
+
+    private static JmmNode newLiteral(String kind, String value) {
+        JmmNode literal = new JmmNodeImpl(kind);
+        literal.put("value", value);
+        Types.setType(literal, kind.equals("Integer") ? Types.INT : Types.BOOLEAN);
+        return literal;
+    }
+}
@@ -0,0 +1,249 @@
+package pt.up.fe.comp2023.ollir;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.semantic.Identifiers;
+import pt.up.fe.comp2023.semantic.Scope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static pt.up.fe.comp2023.ollir.ConstantPropagator.STATEMENTS;
+
+// Removes the code of a method that can never run or whose result is never used: the branch an if with a constant
+// condition never takes, the loops whose condition is false, the statements after a loop that never ends, and the
+// assignments to locals that are never read and expression statements, when their value has no effect.
+// Every removal is logged in the reports.
+public class DeadCodeEliminator {
+
+    // Expressions that cannot throw nor have any other effect
+    private static final Set<String> PURE = Set.of("Integer", "BoolExpr", "Identifier", "Reference", "PrioExpr",
+            "UnaryOp", "BinaryOp");
+
+    private final List<Report> reports;
+    private Scope scope;
+    private String methodName;
+    private boolean changed;
+    private int removed;
+
+    public DeadCodeEliminator(List<Report> reports) {
+        this.reports = reports;
+    }
+
+    // Removes the dead code of the method, returns whether anything was removed
+    public boolean eliminate(JmmNode method) {
+        scope = (Scope) method.getObject(Scope.ATTRIBUTE);
+        methodName = method.get("methodName");
+        changed = false;
+        visitStatements(method);
+        removeUnusedStatements(method);
+        return changed;
+    }
+
+    // How many statements were removed
+    public int getRemoved() {
+        return removed;
+    }
+
+    // Statements
+
+    // Visits the statements of a block or of the method, removing the ones after a statement that never ends
+    private void visitStatements(JmmNode block) {
+        int i = 0;
+        while (i < block.getNumChildren()) {
+            JmmNode statement = block.getJmmChild(i);
+            if (!STATEMENTS.contains(statement.getKind())) {
+                i++;
+                continue;
+            }
+            statement = visitStatement(statement);
+            if (statement == null) {
+                continue;
+            }
+            i++;
+            if (!completes(statement)) {
+                removeUnreachable(block, i);
+            }
+        }
+    }
+
+    // Returns the statement that took the place of the given one, null when it was removed
+    private JmmNode visitStatement(JmmNode statement) {
+        switch (statement.getKind()) {
+            case "StmtBlock":
+                visitStatements(statement);
+                return statement;
+            case "Conditional":
+                return visitConditional(statement);
+            case "WhileLoop":
+                return visitWhileLoop(statement);
+            default:
+                return statement;
+        }
+    }
+
+    private JmmNode visitConditional(JmmNode node) {
+        JmmNode condition = node.getJmmChild(0);
+        if (!condition.getKind().equals("BoolExpr")) {
+            visitStatement(node.getJmmChild(1));
+            visitStatement(node.getJmmChild(2));
+            return node;
+        }
+
+        boolean isTrue = condition.get("value").equals("true");
+        JmmNode taken = node.getJmmChild(isTrue ? 1 : 2);
+        node.replace(taken);
+        changed = true;
+        removed++;
+        log(node, "Removed the " + (isTrue ? "else" : "then") + " branch of an if whose condition is always " + isTrue);
+        return visitStatement(taken);
+    }
+
+    private JmmNode visitWhileLoop(JmmNode node) {
+        JmmNode condition = node.getJmmChild(0);
+        if (condition.getKind().equals("BoolExpr") && condition.get("value").equals("false")) {
+            log(node, "Removed a while loop whose condition is always false");
+            return remove(node);
+        }
+        visitStatement(node.getJmmChild(1));
+        return node;
+    }
+
+    // Whether running the statement can reach the next one, which is not the case only for endless loops
+    private static boolean completes(JmmNode statement) {
+        switch (statement.getKind()) {
+            case "WhileLoop":
+                JmmNode condition = statement.getJmmChild(0);
+                return !condition.getKind().equals("BoolExpr") || condition.get("value").equals("false");
+            case "StmtBlock":
+                return statement.getChildren().stream().allMatch(DeadCodeEliminator::completes);
+            case "Conditional":
+                return completes(statement.getJmmChild(1)) || completes(statement.getJmmChild(2));
+            default:
+                return true;
+        }
+    }
+
+    private void removeUnreachable(JmmNode block, int from) {
+        List<JmmNode> unreachable = new ArrayList<>();
+        for (int i = from; i < block.getNumChildren(); i++) {
+            if (STATEMENTS.contains(block.getJmmChild(i).getKind())) {
+                unreachable.add(block.getJmmChild(i));
+            }
+        }
+        for (JmmNode statement : unreachable) {
+            log(statement, "Removed a statement that is never reached, it comes after an endless loop");
+            remove(statement);
+        }
+    }
+
+    // Statements without effect
+
+    // Removes the assignments to locals that are never read and the expression statements, when evaluating their
+    // value has no effect. The reads of each local are counted, so removing the last statement that reads a local
+    // makes its assignments removable too, without scanning the method again
+    private void removeUnusedStatements(JmmNode method) {
+        Map<Integer, Integer> reads = new HashMap<>();
+        Map<Integer, List<JmmNode>> stores = new HashMap<>();
+        Deque<JmmNode> unused = new ArrayDeque<>();
+
+        Deque<JmmNode> nodes = new ArrayDeque<>();
+        nodes.push(method);
+        while (!nodes.isEmpty()) {
+            JmmNode node = nodes.pop();
+            switch (node.getKind()) {
+                case "Identifier":
+                    reads.merge(Identifiers.id(node, "value"), 1, Integer::sum);
+                    break;
+                case "ArrayAssignment":
+                    reads.merge(Identifiers.id(node, "var"), 1, Integer::sum);
+                    break;
+                case "Assignment":
+                    int nameId = Identifiers.id(node, "var");
+                    if (scope.getLocal(nameId) != null && isPure(node.getJmmChild(0))) {
+                        stores.computeIfAbsent(nameId, id -> new ArrayList<>()).add(node);
+                    }
+                    break;
+                case "ExprStmt":
+                    if (isPure(node.getJmmChild(0))) {
+                        unused.add(node);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            node.getChildren().forEach(nodes::push);
+        }
+        stores.forEach((nameId, assignments) -> {
+            if (!reads.containsKey(nameId)) {
+                unused.addAll(assignments);
+            }
+        });
+
+        while (!unused.isEmpty()) {
+            JmmNode statement = unused.poll();
+            if (statement.getKind().equals("ExprStmt")) {
+                log(statement, "Removed an expression statement without effect");
+            } else {
+                log(statement, "Removed an unread assignment to '" + statement.get("var") + "'");
+            }
+            remove(statement);
+
+            nodes.push(statement.getJmmChild(0));
+            while (!nodes.isEmpty()) {
+                JmmNode node = nodes.pop();
+                if (node.getKind().equals("Identifier")) {
+                    int nameId = Identifiers.id(node, "value");
+                    if (reads.merge(nameId, -1, Integer::sum) == 0 && stores.containsKey(nameId)) {
+                        unused.addAll(stores.remove(nameId));
+                    }
+                }
+                node.getChildren().forEach(nodes::push);
+            }
+        }
+    }
+
+    // Checked with an explicit stack, as expressions can be very deep
+    private static boolean isPure(JmmNode expression) {
+        Deque<JmmNode> nodes = new ArrayDeque<>();
+        nodes.push(expression);
+        while (!nodes.isEmpty()) {
+            JmmNode node = nodes.pop();
+            if (!PURE.contains(node.getKind()) || node.getKind().equals("BinaryOp") && node.get("op").equals("/")) {
+                // Divisions may throw
+                return false;
+            }
+            node.getChildren().forEach(nodes::push);
+        }
+        return true;
+    }
+
+    // Helpers
+
+    // The body of an if or of a loop is replaced by an empty block, which is returned
+    private JmmNode remove(JmmNode statement) {
+        JmmNode parent = statement.getJmmParent();
+        changed = true;
+        removed++;
+        if (parent.getKind().equals("Conditional") || parent.getKind().equals("WhileLoop")) {
+            JmmNode empty = new JmmNodeImpl("StmtBlock");
+            statement.replace(empty);
+            return empty;
+        }
+        parent.removeJmmChild(statement);
+        return null;
+    }
+
+    private void log(JmmNode node, String message) {
+        int line = node.getOptional("lineStart").map(Integer::parseInt).orElse(-1);
+        reports.add(new Report(ReportType.LOG, Stage.OPTIMIZATION, line, message + " in method '" + methodName + "'."));
+    }
+}
@@ -1,16 +1,100 @@
 package pt.up.fe.comp2023.ollir;
 
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.CompilationStats;
 import pt.up.fe.comp2023.semantic.ASymbolTable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 public class JmmOptimizer implements JmmOptimization{
+    // Builds the OLLIR classes directly, without going through OLLIR text
+    public ClassUnit toClassUnit(JmmSemanticsResult jmmSemanticsResult) {
+        OllirBuilder ollirBuilder = new OllirBuilder((ASymbolTable) jmmSemanticsResult.getSymbolTable());
+        ClassUnit classUnit = CompilationStats.measure("ollir generation", () -> ollirBuilder.build(jmmSemanticsResult.getRootNode()));
+        CompilationStats.count("ollir temporaries", ollirBuilder.getTemporaryCount());
+        return classUnit;
+    }
+
     @Override
     public OllirResult toOllir(JmmSemanticsResult jmmSemanticsResult) {
-        final StringBuilder ollirCode = new StringBuilder();
-        OllirGenerator ollirGenerator = new OllirGenerator(ollirCode, (ASymbolTable) jmmSemanticsResult.getSymbolTable(), 4);
-        ollirGenerator.visit(jmmSemanticsResult.getRootNode());
-        return new OllirResult(jmmSemanticsResult, ollirGenerator.ollirCode.toString(), jmmSemanticsResult.getReports());
+        String ollirCode = new OllirPrinter(toClassUnit(jmmSemanticsResult)).getCode();
+        // The reports are copied, so the optimizations of the OLLIR can add their own
+        return CompilationStats.measure("ollir parsing", () -> new OllirResult(jmmSemanticsResult, ollirCode, new ArrayList<>(jmmSemanticsResult.getReports())));
+    }
+
+    // With the 'optimize' option, propagates and folds the constants of the AST, which is changed in place, and
+    // removes the code that became dead, until neither changes a method. The removals are logged in the reports of
+    // the result
+    @Override
+    public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
+        if (!"true".equals(semanticsResult.getConfig().get("optimize"))) {
+            return semanticsResult;
+        }
+        List<Report> reports = new ArrayList<>(semanticsResult.getReports());
+        ConstantPropagator propagator = new ConstantPropagator();
+        DeadCodeEliminator eliminator = new DeadCodeEliminator(reports);
+        for (JmmNode method : methods(semanticsResult.getRootNode())) {
+            do {
+                propagator.optimize(method);
+            } while (eliminator.eliminate(method));
+        }
+        CompilationStats.count("constants folded", propagator.getFolded());
+        CompilationStats.count("statements removed", eliminator.getRemoved());
+        return new JmmSemanticsResult(semanticsResult.getRootNode(), semanticsResult.getSymbolTable(), reports, semanticsResult.getConfig());
+    }
+
+    private static List<JmmNode> methods(JmmNode root) {
+        List<JmmNode> methods = new ArrayList<>();
+        for (JmmNode declaration : root.getChildren()) {
+            if (declaration.getKind().equals("ClassDeclaration")) {
+                declaration.getChildren().stream().filter(node -> node.getKind().equals("InstanceMethod") || node.getKind().equals("MainMethod")).forEach(methods::add);
+            }
+        }
+        return methods;
+    }
+
+    @Override
+    public OllirResult optimize(OllirResult ollirResult) {
+        optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+        ollirResult.getReports().addAll(allocateRegisters(ollirResult.getOllirClass(), ollirResult.getConfig()));
+        return ollirResult;
+    }
+
+    // With the 'optimize' option, rewrites the instructions of every method, before the registers are allocated
+    public void optimize(ClassUnit classUnit, Map<String, String> config) {
+        if (!"true".equals(config.get("optimize"))) {
+            return;
+        }
+        // Tail calls become loops first, so their invariants can be hoisted too
+        int tailCalls = CompilationStats.measure("ollir optimization", () -> TailRecursion.optimize(classUnit));
+        int hoisted = CompilationStats.measure("ollir optimization", () -> LoopInvariantMotion.optimize(classUnit));
+        int reused = CompilationStats.measure("ollir optimization", () -> ValueNumbering.optimize(classUnit));
+        CompilationStats.count("tail calls eliminated", tailCalls);
+        CompilationStats.count("invariants hoisted", hoisted);
+        CompilationStats.count("expressions reused", reused);
+
+        // The temporaries whose copies were removed must not keep a register, and the new ones need one
+        for (Method method : classUnit.getMethods()) {
+            method.getVarTable().clear();
+            method.buildVarTable();
+        }
+    }
+
+    // With the 'registerAllocation' option at 0 or more, gives the variables of each method as few registers as
+    // possible, at most that many when it is not 0. The backends then keep these registers
+    public List<Report> allocateRegisters(ClassUnit classUnit, Map<String, String> config) {
+        int maxRegisters = Integer.parseInt(config.getOrDefault("registerAllocation", "-1"));
+        if (maxRegisters < 0) {
+            return List.of();
+        }
+        return CompilationStats.measure("register allocation", () -> RegisterAllocator.allocate(classUnit, maxRegisters));
     }
 }
@@ -0,0 +1,238 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Variables live at each instruction of a method. The data flow is solved over the basic blocks, and the live sets
+// inside a block are rebuilt by scanning it backwards, so only one set per block is kept, which matters for
+// methods with hundreds of thousands of temporaries.
+public class Liveness {
+
+    // Called for every instruction with the variables live right after it, which must not be modified
+    public interface InstructionVisitor {
+        void visit(int instruction, BitSet liveOut);
+    }
+
+    private final List<Instruction> instructions;
+    private final Map<String, Integer> variables;
+    private final int[] defs;
+    private final int[][] uses;
+
+    private final int[] blockStarts;
+    private final int[][] blockSuccessors;
+    private final BitSet[] blockLiveIn;
+    private final BitSet[] blockLiveOut;
+
+    // The variables are given by their index, names that are not in the map (fields, classes) are ignored
+    public Liveness(Method method, Map<String, Integer> variables) {
+        this.instructions = method.getInstructions();
+        this.variables = variables;
+        this.defs = new int[instructions.size()];
+        this.uses = new int[instructions.size()][];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            List<Integer> used = new ArrayList<>();
+            defs[i] = -1;
+            addUses(instructions.get(i), used, i);
+            uses[i] = used.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Blocks start at the first instruction, at every label and after every jump
+        Map<Instruction, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            indexes.put(instructions.get(i), i);
+        }
+        // The labels are taken from the label map, as the labels of each instruction are cached the first time they
+        // are asked for, and the optimizations may have moved them since
+        BitSet leaders = new BitSet();
+        leaders.set(0);
+        for (Instruction target : method.getLabels().values()) {
+            leaders.set(indexes.get(target));
+        }
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            if (isJump(instruction)) {
+                leaders.set(i + 1);
+            }
+        }
+        leaders.clear(instructions.size(), leaders.length() + 1);
+
+        blockStarts = leaders.stream().toArray();
+        int[] blockOf = new int[instructions.size()];
+        for (int block = 0; block < blockStarts.length; block++) {
+            for (int i = blockStarts[block]; i < blockEnd(block); i++) {
+                blockOf[i] = block;
+            }
+        }
+
+        blockSuccessors = new int[blockStarts.length][];
+        for (int block = 0; block < blockStarts.length; block++) {
+            int last = blockEnd(block) - 1;
+            Instruction instruction = instructions.get(last);
+            List<Integer> successors = new ArrayList<>();
+            if (instruction instanceof GotoInstruction) {
+                successors.add(blockOf[indexes.get(method.getLabels().get(((GotoInstruction) instruction).getLabel()))]);
+            } else if (instruction instanceof CondBranchInstruction) {
+                successors.add(blockOf[indexes.get(method.getLabels().get(((CondBranchInstruction) instruction).getLabel()))]);
+            }
+            if (!(instruction instanceof GotoInstruction) && !(instruction instanceof ReturnInstruction)
+                    && last + 1 < instructions.size()) {
+                successors.add(block + 1);
+            }
+            blockSuccessors[block] = successors.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        blockLiveIn = new BitSet[blockStarts.length];
+        blockLiveOut = new BitSet[blockStarts.length];
+        for (int block = 0; block < blockStarts.length; block++) {
+            blockLiveIn[block] = new BitSet();
+            blockLiveOut[block] = new BitSet();
+        }
+        solve();
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    // Variable written by the instruction, or -1
+    public int getDef(int instruction) {
+        return defs[instruction];
+    }
+
+    public int[] getUses(int instruction) {
+        return uses[instruction];
+    }
+
+    // Variables that are read before being written on some path from the start of the method
+    public BitSet getLiveAtEntry() {
+        return blockStarts.length == 0 ? new BitSet() : blockLiveIn[0];
+    }
+
+    // Visits every instruction with its live out set, the instructions of a block from the last to the first
+    public void scan(InstructionVisitor visitor) {
+        for (int block = 0; block < blockStarts.length; block++) {
+            BitSet live = (BitSet) blockLiveOut[block].clone();
+            for (int i = blockEnd(block) - 1; i >= blockStarts[block]; i--) {
+                visitor.visit(i, live);
+                transfer(i, live);
+            }
+        }
+    }
+
+    // Iterates the blocks backwards until no live in set changes
+    private void solve() {
+        Deque<Integer> worklist = new ArrayDeque<>();
+        boolean[] queued = new boolean[blockStarts.length];
+        List<List<Integer>> predecessors = new ArrayList<>();
+        for (int block = 0; block < blockStarts.length; block++) {
+            predecessors.add(new ArrayList<>());
+        }
+        for (int block = blockStarts.length - 1; block >= 0; block--) {
+            for (int successor : blockSuccessors[block]) {
+                predecessors.get(successor).add(block);
+            }
+            worklist.add(block);
+            queued[block] = true;
+        }
+
+        while (!worklist.isEmpty()) {
+            int block = worklist.poll();
+            queued[block] = false;
+
+            BitSet liveOut = blockLiveOut[block];
+            for (int successor : blockSuccessors[block]) {
+                liveOut.or(blockLiveIn[successor]);
+            }
+            BitSet live = (BitSet) liveOut.clone();
+            for (int i = blockEnd(block) - 1; i >= blockStarts[block]; i--) {
+                transfer(i, live);
+            }
+
+            if (!live.equals(blockLiveIn[block])) {
+                blockLiveIn[block] = live;
+                for (int predecessor : predecessors.get(block)) {
+                    if (!queued[predecessor]) {
+                        worklist.add(predecessor);
+                        queued[predecessor] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void transfer(int instruction, BitSet live) {
+        if (defs[instruction] != -1) {
+            live.clear(defs[instruction]);
+        }
+        for (int use : uses[instruction]) {
+            live.set(use);
+        }
+    }
+
+    private int blockEnd(int block) {
+        return block + 1 < blockStarts.length ? blockStarts[block + 1] : instructions.size();
+    }
+
+    private static boolean isJump(Instruction instruction) {
+        return instruction instanceof GotoInstruction || instruction instanceof CondBranchInstruction
+                || instruction instanceof ReturnInstruction;
+    }
+
+    private void addUses(Instruction instruction, List<Integer> used, int index) {
+        if (instruction instanceof AssignInstruction) {
+            AssignInstruction assign = (AssignInstruction) instruction;
+            addUses(assign.getRhs(), used, index);
+            if (assign.getDest() instanceof ArrayOperand) {
+                addUse(assign.getDest(), used);
+            } else {
+                defs[index] = variable(assign.getDest());
+            }
+        } else if (instruction instanceof CallInstruction) {
+            CallInstruction call = (CallInstruction) instruction;
+            addUse(call.getFirstArg(), used);
+            if (call.getListOfOperands() != null) {
+                call.getListOfOperands().forEach(operand -> addUse(operand, used));
+            }
+        } else if (instruction instanceof PutFieldInstruction) {
+            addUse(((PutFieldInstruction) instruction).getFirstOperand(), used);
+            addUse(((PutFieldInstruction) instruction).getThirdOperand(), used);
+        } else if (instruction instanceof GetFieldInstruction) {
+            addUse(((GetFieldInstruction) instruction).getFirstOperand(), used);
+        } else if (instruction instanceof ReturnInstruction) {
+            if (((ReturnInstruction) instruction).hasReturnValue()) {
+                addUse(((ReturnInstruction) instruction).getOperand(), used);
+            }
+        } else if (instruction instanceof CondBranchInstruction) {
+            addUses(((CondBranchInstruction) instruction).getCondition(), used, index);
+        } else if (instruction instanceof OpInstruction) {
+            ((OpInstruction) instruction).getOperands().forEach(operand -> addUse(operand, used));
+        } else if (instruction instanceof SingleOpInstruction) {
+            addUse(((SingleOpInstruction) instruction).getSingleOperand(), used);
+        }
+    }
+
+    private void addUse(Element element, List<Integer> used) {
+        int variable = variable(element);
+        if (variable != -1) {
+            used.add(variable);
+        }
+        if (element instanceof ArrayOperand) {
+            ((ArrayOperand) element).getIndexOperands().forEach(index -> addUse(index, used));
+        }
+    }
+
+    private int variable(Element element) {
+        if (element == null || element.isLiteral() || !(element instanceof Operand)) {
+            return -1;
+        }
+        return variables.getOrDefault(((Operand) element).getName(), -1);
+    }
+}
@@ -0,0 +1,299 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Moves the instructions of a loop that compute the same value on every iteration to a preheader just before the
+// loop, so they run once. A loop is the range from the instruction a backward jump goes to up to that jump, which
+// is the test at the end of a while loop, and an instruction is moved when it assigns a variable that has no other
+// assignment in the method, from operands that the loop does not change, and cannot have any effect. Loops are
+// visited from the first backward jump, so an inner loop moves its instructions before the loop around it looks at
+// them.
+public class LoopInvariantMotion {
+
+    // Operations that never throw
+    private static final Set<OperationType> SAFE_OPERATIONS = Set.of(OperationType.ADD, OperationType.SUB,
+            OperationType.MUL, OperationType.LTH, OperationType.GTH, OperationType.ANDB, OperationType.ORB,
+            OperationType.NOTB);
+
+    private final Method method;
+    private final List<Instruction> instructions;
+    private final Map<Instruction, Integer> indexes = new IdentityHashMap<>();
+    private final Map<Instruction, List<String>> labels = new IdentityHashMap<>();
+    // Instructions that jump to each label
+    private final Map<String, List<Instruction>> jumps = new HashMap<>();
+    // How many times each variable is assigned in the method, parameters count their value on entry
+    private final Map<String, Integer> assignments = new HashMap<>();
+    private int hoisted;
+
+    public LoopInvariantMotion(Method method) {
+        this.method = method;
+        this.instructions = method.getInstructions();
+    }
+
+    // Optimizes every method of the class, returns how many instructions were moved out of loops
+    public static int optimize(ClassUnit classUnit) {
+        int hoisted = 0;
+        for (Method method : classUnit.getMethods()) {
+            if (!method.isConstructMethod()) {
+                hoisted += new LoopInvariantMotion(method).optimize();
+            }
+        }
+        return hoisted;
+    }
+
+    public int optimize() {
+        for (int i = 0; i < instructions.size(); i++) {
+            indexes.put(instructions.get(i), i);
+        }
+        method.getLabels().forEach((label, instruction) -> labels.computeIfAbsent(instruction, key -> new ArrayList<>()).add(label));
+        for (Element param : method.getParams()) {
+            assignments.put(((Operand) param).getName(), 1);
+        }
+
+        List<Instruction> backEdges = new ArrayList<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            String target = jumpTarget(instruction);
+            if (target != null) {
+                jumps.computeIfAbsent(target, key -> new ArrayList<>()).add(instruction);
+                if (indexes.get(method.getLabels().get(target)) <= i) {
+                    backEdges.add(instruction);
+                }
+            }
+            String dest = assignedVariable(instruction);
+            if (dest != null) {
+                assignments.merge(dest, 1, Integer::sum);
+            }
+        }
+
+        // Moving instructions inside a loop leaves the instructions after it where they were, so the later gotos
+        // and the loops around this one keep their indexes
+        for (Instruction backEdge : backEdges) {
+            Instruction header = method.getLabels().get(jumpTarget(backEdge));
+            hoist(indexes.get(header), indexes.get(backEdge));
+        }
+        return hoisted;
+    }
+
+    private void hoist(int start, int end) {
+        // The loop can only be entered through its first instruction, and the labels there that are jumped to
+        // from outside the loop must go to the preheader
+        List<String> entryLabels = new ArrayList<>();
+        for (int i = start; i <= end; i++) {
+            for (String label : labels.getOrDefault(instructions.get(i), List.of())) {
+                boolean fromInside = false;
+                boolean fromOutside = false;
+                for (Instruction jump : jumps.getOrDefault(label, List.of())) {
+                    int index = indexes.get(jump);
+                    if (index >= start && index <= end) {
+                        fromInside = true;
+                    } else {
+                        fromOutside = true;
+                    }
+                }
+                if (i == start && !fromInside) {
+                    entryLabels.add(label);
+                } else if (fromOutside) {
+                    return;
+                }
+            }
+        }
+
+        Set<String> changed = new HashSet<>();
+        boolean callsMethods = false;
+        Set<String> storedFields = new HashSet<>();
+        for (int i = start; i <= end; i++) {
+            Instruction instruction = instructions.get(i);
+            String dest = assignedVariable(instruction);
+            if (dest != null) {
+                changed.add(dest);
+            }
+            if (instruction instanceof AssignInstruction) {
+                instruction = ((AssignInstruction) instruction).getRhs();
+            }
+            if (instruction instanceof PutFieldInstruction) {
+                storedFields.add(((Operand) ((PutFieldInstruction) instruction).getSecondOperand()).getName());
+            } else if (instruction instanceof CallInstruction && mayChangeFields((CallInstruction) instruction)) {
+                callsMethods = true;
+            }
+        }
+
+        // Instructions that may throw are only moved while every instruction before them in the loop is moved too,
+        // as they then run first whenever the loop is entered, or when the code before the loop already ran them
+        Set<String> checkedArrays = entryLabels.isEmpty() ? checkedArrays(start) : Set.of();
+        boolean first = true;
+        Set<String> invariant = new HashSet<>();
+        List<Instruction> moved = new ArrayList<>();
+        for (int i = start; i <= end; i++) {
+            Instruction instruction = instructions.get(i);
+            boolean canMove = instruction instanceof AssignInstruction;
+            if (canMove) {
+                AssignInstruction assign = (AssignInstruction) instruction;
+                String dest = assignedVariable(assign);
+                canMove = dest != null && assignments.get(dest) == 1
+                        && isInvariant(assign.getRhs(), changed, invariant, callsMethods, storedFields, first, checkedArrays);
+                if (canMove) {
+                    moved.add(instruction);
+                    invariant.add(dest);
+                }
+            }
+            if (!canMove && !isSafe(instruction)) {
+                first = false;
+            }
+        }
+        if (moved.isEmpty()) {
+            return;
+        }
+
+        // The instructions keep their order, so each one is still after the ones it reads. The labels of a moved
+        // instruction go to the next one left in the loop, except the ones the loop is entered by
+        Set<Instruction> isMoved = Collections.newSetFromMap(new IdentityHashMap<>());
+        isMoved.addAll(moved);
+        List<Instruction> loop = new ArrayList<>(moved);
+        List<String> pendingLabels = new ArrayList<>();
+        for (int i = start; i <= end; i++) {
+            Instruction instruction = instructions.get(i);
+            if (isMoved.contains(instruction) || i == start) {
+                pendingLabels.addAll(labels.getOrDefault(instruction, List.of()));
+                labels.remove(instruction);
+            }
+            if (!isMoved.contains(instruction)) {
+                loop.add(instruction);
+                for (String label : pendingLabels) {
+                    moveLabel(label, entryLabels.contains(label) ? moved.get(0) : instruction);
+                }
+                pendingLabels.clear();
+            }
+        }
+        for (int i = start; i <= end; i++) {
+            instructions.set(i, loop.get(i - start));
+            indexes.put(loop.get(i - start), i);
+        }
+        hoisted += moved.size();
+    }
+
+    // Arrays whose length is read by the instructions that fall through to the first one of the loop, with no
+    // assignment to the array after it, as in the test before a while loop. The loop is only entered after that read
+    private Set<String> checkedArrays(int start) {
+        Set<String> checked = new HashSet<>();
+        Set<String> assigned = new HashSet<>();
+        for (int i = start - 1; i >= 0; i--) {
+            Instruction instruction = instructions.get(i);
+            if (instruction instanceof GotoInstruction || instruction instanceof ReturnInstruction) {
+                break;
+            }
+            if (instruction instanceof AssignInstruction) {
+                Instruction rhs = ((AssignInstruction) instruction).getRhs();
+                if (rhs instanceof CallInstruction && ((CallInstruction) rhs).getInvocationType() == CallType.arraylength) {
+                    String array = ((Operand) ((CallInstruction) rhs).getFirstArg()).getName();
+                    if (!assigned.contains(array)) {
+                        checked.add(array);
+                    }
+                }
+                String dest = assignedVariable(instruction);
+                if (dest != null) {
+                    assigned.add(dest);
+                }
+            }
+            // Other paths may join at a label
+            if (labels.containsKey(instruction)) {
+                break;
+            }
+        }
+        return checked;
+    }
+
+    private void moveLabel(String label, Instruction target) {
+        method.getLabels().put(label, target);
+        labels.computeIfAbsent(target, key -> new ArrayList<>()).add(label);
+    }
+
+    private static boolean isInvariant(Instruction rhs, Set<String> changed, Set<String> invariant, boolean callsMethods,
+                                       Set<String> storedFields, boolean first, Set<String> checkedArrays) {
+        if (rhs instanceof SingleOpInstruction) {
+            return isInvariant(((SingleOpInstruction) rhs).getSingleOperand(), changed, invariant);
+        }
+        if (rhs instanceof BinaryOpInstruction || rhs instanceof UnaryOpInstruction) {
+            OpInstruction op = (OpInstruction) rhs;
+            return SAFE_OPERATIONS.contains(op.getOperation().getOpType())
+                    && op.getOperands().stream().allMatch(operand -> isInvariant(operand, changed, invariant));
+        }
+        if (rhs instanceof GetFieldInstruction) {
+            // Fields of this only change through putfield or a call
+            GetFieldInstruction getField = (GetFieldInstruction) rhs;
+            String field = ((Operand) getField.getSecondOperand()).getName();
+            return !callsMethods && !storedFields.contains(field)
+                    && getField.getFirstOperand().getType().getTypeOfElement() == ElementType.THIS;
+        }
+        if (rhs instanceof CallInstruction && ((CallInstruction) rhs).getInvocationType() == CallType.arraylength) {
+            // The length of an array never changes, but reading it throws when the array is null
+            Element array = ((CallInstruction) rhs).getFirstArg();
+            return (first || checkedArrays.contains(((Operand) array).getName())) && isInvariant(array, changed, invariant);
+        }
+        return false;
+    }
+
+    private static boolean isInvariant(Element element, Set<String> changed, Set<String> invariant) {
+        if (element.isLiteral()) {
+            return true;
+        }
+        if (element instanceof ArrayOperand) {
+            return false;
+        }
+        String name = ((Operand) element).getName();
+        return !changed.contains(name) || invariant.contains(name);
+    }
+
+    // Whether the instruction has no effect and cannot throw
+    private static boolean isSafe(Instruction instruction) {
+        if (!(instruction instanceof AssignInstruction)) {
+            return false;
+        }
+        AssignInstruction assign = (AssignInstruction) instruction;
+        if (assign.getDest() instanceof ArrayOperand) {
+            return false;
+        }
+        Instruction rhs = assign.getRhs();
+        if (rhs instanceof SingleOpInstruction) {
+            return !(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand);
+        }
+        if (rhs instanceof OpInstruction) {
+            return SAFE_OPERATIONS.contains(((OpInstruction) rhs).getOperation().getOpType());
+        }
+        return rhs instanceof GetFieldInstruction;
+    }
+
+    // Creating arrays and reading their length cannot change a field, any method or constructor could
+    private static boolean mayChangeFields(CallInstruction call) {
+        CallType type = call.getInvocationType();
+        return type != CallType.arraylength && !(type == CallType.NEW && call.getReturnType().getTypeOfElement() == ElementType.ARRAYREF);
+    }
+
+    // Variable the instruction writes as a whole, null for array elements and any other instruction
+    private static String assignedVariable(Instruction instruction) {
+        if (!(instruction instanceof AssignInstruction)) {
+            return null;
+        }
+        Element dest = ((AssignInstruction) instruction).getDest();
+        return dest instanceof ArrayOperand ? null : ((Operand) dest).getName();
+    }
+
+    private static String jumpTarget(Instruction instruction) {
+        if (instruction instanceof GotoInstruction) {
+            return ((GotoInstruction) instruction).getLabel();
+        }
+        if (instruction instanceof CondBranchInstruction) {
+            return ((CondBranchInstruction) instruction).getLabel();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,641 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2023.semantic.ASymbolTable;
+import pt.up.fe.comp2023.semantic.Identifiers;
+import pt.up.fe.comp2023.semantic.Scope;
+import pt.up.fe.comp2023.semantic.Types;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static pt.up.fe.comp2023.ollir.OllirUtils.*;
+
+// Builds the OLLIR ClassUnit directly from the annotated AST, so the backends never need OLLIR text.
+// Statements add their instructions to the current method; an expression returns the instruction that computes
+// its value, and operands that are not a variable or a literal are first stored in a temporary.
+public class OllirBuilder extends AJmmVisitor<Type, Instruction> {
+
+    private final ASymbolTable symbolTable;
+    private final ClassUnit classUnit = new ClassUnit();
+
+    private Method method;
+    private String methodName;
+    private Scope scope;
+    // Labels waiting for the next instruction of the method
+    private final List<String> pendingLabels = new ArrayList<>();
+    private final Set<String> variableNames = new HashSet<>();
+    private int tempCounter;
+    private int labelCounter;
+    private int temporaries;
+
+    public OllirBuilder(ASymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    @Override
+    protected void buildVisitor() {
+        addVisit("Program", this::visitProgram);
+        addVisit("ClassDeclaration", this::visitClassDeclaration);
+        addVisit("InstanceMethod", this::visitMethod);
+        addVisit("MainMethod", this::visitMethod);
+        addVisit("StmtBlock", this::visitStmtBlock);
+        addVisit("Conditional", this::visitConditional);
+        addVisit("WhileLoop", this::visitWhileLoop);
+        addVisit("ExprStmt", this::visitExprStmt);
+        addVisit("Assignment", this::visitAssignment);
+        addVisit("ArrayAssignment", this::visitArrayAssignment);
+        addVisit("PrioExpr", this::visitOperator);
+        addVisit("BinaryOp", this::visitOperator);
+        addVisit("UnaryOp", this::visitOperator);
+        addVisit("MethodCall", this::visitMethodCall);
+        addVisit("ArrayExpr", this::visitArrayExpr);
+        addVisit("Length", this::visitLength);
+        addVisit("ArrayInit", this::visitArrayInit);
+        addVisit("Constructor", this::visitConstructor);
+        addVisit("Integer", this::visitInteger);
+        addVisit("BoolExpr", this::visitBoolExpr);
+        addVisit("Reference", this::visitReference);
+        addVisit("Identifier", this::visitIdentifier);
+        setDefaultVisit((node, expected) -> null);
+    }
+
+    public ClassUnit build(JmmNode root) {
+        visit(root, null);
+        classUnit.buildVarTables();
+        return classUnit;
+    }
+
+    public int getTemporaryCount() {
+        return temporaries;
+    }
+
+    private Instruction visitProgram(JmmNode node, Type expected) {
+        for (String path : symbolTable.getImports()) {
+            classUnit.addImport(path);
+        }
+        visitAllChildren(node, expected);
+        return null;
+    }
+
+    private Instruction visitClassDeclaration(JmmNode node, Type expected) {
+        classUnit.setClassName(symbolTable.getClassName());
+        classUnit.setSuperClass(symbolTable.getSuper());
+
+        for (Symbol symbol : symbolTable.getFields()) {
+            Field field = new Field();
+            field.setFieldAccessModifier(AccessModifiers.PUBLIC);
+            field.setFieldName(symbol.getName());
+            field.setFieldType(toOllirType(symbol.getType()));
+            classUnit.addField(field);
+        }
+
+        Method constructor = new Method(classUnit);
+        constructor.setConstructMethod();
+        constructor.setMethodName(symbolTable.getClassName());
+        constructor.setReturnType(new Type(ElementType.VOID));
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, thisOperand(), methodLiteral("<init>"), new ArrayList<>(), new Type(ElementType.VOID)));
+        classUnit.addMethod(constructor);
+
+        visitAllChildren(node, expected);
+        return null;
+    }
+
+    private Instruction visitMethod(JmmNode node, Type expected) {
+        boolean isMain = node.getKind().equals("MainMethod");
+        methodName = node.get("methodName");
+        scope = (Scope) node.getObject(Scope.ATTRIBUTE);
+        method = new Method(classUnit);
+        method.setMethodName(methodName);
+        method.setMethodAccessModifier(AccessModifiers.PUBLIC);
+        if (isMain) {
+            method.setStaticMethod();
+        }
+        Type returnType = toOllirType(symbolTable.getReturnType(methodName));
+        method.setReturnType(returnType);
+
+        pendingLabels.clear();
+        variableNames.clear();
+        tempCounter = 0;
+        labelCounter = 0;
+
+        int paramId = isMain ? 0 : 1;
+        for (Symbol symbol : symbolTable.getParameters(methodName)) {
+            Operand param = new Operand(getSafeVariableName(symbol.getName()), toOllirType(symbol.getType()));
+            param.setParamId(paramId++);
+            method.addParam(param);
+            variableNames.add(param.getName());
+        }
+        for (Symbol symbol : symbolTable.getLocalVariables(methodName)) {
+            variableNames.add(getSafeVariableName(symbol.getName()));
+        }
+
+        if (isMain) {
+            visitAllChildren(node, null);
+            ReturnInstruction ret = new ReturnInstruction();
+            ret.setReturnType(returnType);
+            addInstruction(ret);
+        } else {
+            // The last child is the returned expression
+            int last = node.getNumChildren() - 1;
+            for (int i = 0; i < last; i++) {
+                visit(node.getJmmChild(i), null);
+            }
+            Element value = toOperand(node.getJmmChild(last), returnType);
+            if (value.getType().getTypeOfElement() == ElementType.THIS) {
+                // 'this' is not a variable of the method, so it is returned through a temporary
+                Operand temp = newTemp(new ClassType(ElementType.OBJECTREF, symbolTable.getClassName()));
+                addInstruction(new AssignInstruction(temp, temp.getType(), new SingleOpInstruction(value)));
+                value = temp;
+            }
+            ReturnInstruction ret = new ReturnInstruction(value);
+            ret.setReturnType(returnType);
+            addInstruction(ret);
+        }
+
+        classUnit.addMethod(method);
+        return null;
+    }
+
+    // Statements
+
+    private Instruction visitStmtBlock(JmmNode node, Type expected) {
+        visitAllChildren(node, expected);
+        return null;
+    }
+
+    private Instruction visitConditional(JmmNode node, Type expected) {
+        int id = labelCounter++;
+        String thenLabel = "ifbody_" + id;
+        String endLabel = "endif_" + id;
+
+        branch(node.getJmmChild(0), thenLabel, true);
+        visit(node.getJmmChild(2), null);
+        addInstruction(new GotoInstruction(endLabel));
+        pendingLabels.add(thenLabel);
+        visit(node.getJmmChild(1), null);
+        pendingLabels.add(endLabel);
+        return null;
+    }
+
+    private Instruction visitWhileLoop(JmmNode node, Type expected) {
+        int id = labelCounter++;
+        String bodyLabel = "whilebody_" + id;
+        String conditionLabel = "whilecond_" + id;
+        String endLabel = "endwhile_" + id;
+
+        // The condition is tested once before the loop and then at the end of each iteration, so an iteration only
+        // runs one branch back to the body instead of a branch out of the loop and a goto back to the test. A loop
+        // that never ends only jumps back to its body
+        JmmNode condition = node.getJmmChild(0);
+        branch(condition, endLabel, false);
+        pendingLabels.add(bodyLabel);
+        visit(node.getJmmChild(1), null);
+        pendingLabels.add(conditionLabel);
+        branch(condition, bodyLabel, true);
+        pendingLabels.add(endLabel);
+        return null;
+    }
+
+    private Instruction visitExprStmt(JmmNode node, Type expected) {
+        // Only calls have an effect, the operands of any other expression were already evaluated
+        Instruction instruction = visit(node.getJmmChild(0), new Type(ElementType.VOID));
+        if (instruction instanceof CallInstruction) {
+            addInstruction(instruction);
+        }
+        return null;
+    }
+
+    private Instruction visitAssignment(JmmNode node, Type expected) {
+        int nameId = Identifiers.id(node, "var");
+        Symbol variable = findVariable(nameId);
+
+        if (variable != null) {
+            Operand dest = variableOperand(variable);
+            addInstruction(new AssignInstruction(dest, dest.getType(), visit(node.getJmmChild(0), dest.getType())));
+        } else {
+            Symbol field = findField(nameId);
+            Operand fieldOperand = new Operand(field.getName(), toOllirType(field.getType()));
+            Element value = toOperand(node.getJmmChild(0), fieldOperand.getType());
+            addInstruction(new PutFieldInstruction(thisOperand(), fieldOperand, value, new Type(ElementType.VOID)));
+        }
+        return null;
+    }
+
+    private Instruction visitArrayAssignment(JmmNode node, Type expected) {
+        Operand array = arrayOperand(Identifiers.id(node, "var"));
+        Element index = toOperand(node.getJmmChild(0), new Type(ElementType.INT32));
+        Type elementType = elementType(array.getType());
+        Instruction value = visit(node.getJmmChild(1), elementType);
+
+        ArrayOperand dest = new ArrayOperand(array.getName(), elementType, new ArrayList<>(List.of(index)));
+        addInstruction(new AssignInstruction(dest, elementType, value));
+        return null;
+    }
+
+    // Jumps to the label when the condition has the given value and falls through otherwise. && and || only evaluate
+    // their right operand when the left one does not decide the result, and ! swaps the value jumped on, so only
+    // comparisons and plain boolean values are left for the branch instructions. Like operators, the conditions are
+    // lowered with an explicit stack
+    private void branch(JmmNode condition, String label, boolean when) {
+        Deque<Jump> jumps = new ArrayDeque<>();
+        jumps.push(new Jump(condition, label, when));
+
+        while (!jumps.isEmpty()) {
+            Jump jump = jumps.pop();
+            JmmNode node = jump.condition;
+            if (node == null) {
+                pendingLabels.add(jump.label);
+                continue;
+            }
+
+            switch (node.getKind()) {
+                case "PrioExpr":
+                    jumps.push(new Jump(node.getJmmChild(0), jump.label, jump.when));
+                    break;
+                case "UnaryOp":
+                    jumps.push(new Jump(node.getJmmChild(0), jump.label, !jump.when));
+                    break;
+                case "BoolExpr":
+                    if (node.get("value").equals("true") == jump.when) {
+                        addInstruction(new GotoInstruction(jump.label));
+                    }
+                    break;
+                default:
+                    if (!isLogical(node)) {
+                        addInstruction(condBranch(node, jump.label, jump.when));
+                    } else if (node.get("op").equals("&&") != jump.when) {
+                        // Either operand decides the result when it has the value jumped on. The operands are pushed
+                        // in reverse, so the left one is lowered first
+                        jumps.push(new Jump(node.getJmmChild(1), jump.label, jump.when));
+                        jumps.push(new Jump(node.getJmmChild(0), jump.label, jump.when));
+                    } else {
+                        // Both operands must have the value jumped on, the right one is skipped otherwise
+                        String skipLabel = "skip_" + labelCounter++;
+                        jumps.push(new Jump(null, skipLabel, false));
+                        jumps.push(new Jump(node.getJmmChild(1), jump.label, jump.when));
+                        jumps.push(new Jump(node.getJmmChild(0), skipLabel, !jump.when));
+                    }
+                    break;
+            }
+        }
+    }
+
+    private CondBranchInstruction condBranch(JmmNode condition, String label, boolean when) {
+        Instruction instruction = visit(condition, new Type(ElementType.BOOLEAN));
+        Type type = new Type(ElementType.BOOLEAN);
+        CondBranchInstruction branch;
+        if (instruction instanceof BinaryOpInstruction) {
+            BinaryOpInstruction comparison = (BinaryOpInstruction) instruction;
+            if (!when) {
+                // a < b is false when a >= b, and a > b when a <= b
+                OperationType opType = comparison.getOperation().getOpType();
+                Operation negated = new Operation(opType == OperationType.LTH ? OperationType.GTE : OperationType.LTE, type);
+                comparison = new BinaryOpInstruction(comparison.getLeftOperand(), negated, comparison.getRightOperand());
+            }
+            branch = new OpCondInstruction(comparison);
+        } else if (when) {
+            branch = new SingleOpCondInstruction(new SingleOpInstruction(asOperand(instruction)));
+        } else {
+            branch = new OpCondInstruction(new UnaryOpInstruction(new Operation(OperationType.NOTB, type), asOperand(instruction)));
+        }
+        branch.setLabel(label);
+        return branch;
+    }
+
+    private static boolean isLogical(JmmNode node) {
+        return node.getKind().equals("BinaryOp") && (node.get("op").equals("&&") || node.get("op").equals("||"));
+    }
+
+    // A condition waiting to be lowered, or a label to place when there is no condition
+    private static class Jump {
+        private final JmmNode condition;
+        private final String label;
+        private final boolean when;
+
+        private Jump(JmmNode condition, String label, boolean when) {
+            this.condition = condition;
+            this.label = label;
+            this.when = when;
+        }
+    }
+
+    // Expressions
+
+    // Operators are evaluated with an explicit stack of frames instead of recursion, so long chains such as
+    // a + b + c + ... and deeply nested parentheses do not overflow the stack. Each operand is stored as soon as it
+    // is evaluated, as a recursive visit would, so the instructions come out in the same order
+    private Instruction visitOperator(JmmNode node, Type expected) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(node, expected));
+
+        while (true) {
+            Frame frame = frames.peek();
+            if (frame.next < frame.node.getNumChildren()) {
+                JmmNode child = frame.node.getJmmChild(frame.next++);
+                Type operandType = frame.operandType();
+                if (isOperator(child)) {
+                    frames.push(new Frame(child, operandType));
+                } else {
+                    addOperand(frame, visit(child, operandType));
+                }
+                continue;
+            }
+
+            frames.pop();
+            Instruction value = frame.apply();
+            if (frames.isEmpty()) {
+                return value;
+            }
+            addOperand(frames.peek(), value);
+        }
+    }
+
+    private void addOperand(Frame frame, Instruction value) {
+        if (frame.node.getKind().equals("PrioExpr")) {
+            frame.value = value;
+        } else {
+            frame.operands.add(asOperand(value));
+        }
+    }
+
+    private static boolean isOperator(JmmNode node) {
+        String kind = node.getKind();
+        return kind.equals("BinaryOp") || kind.equals("UnaryOp") || kind.equals("PrioExpr");
+    }
+
+    // An operator waiting for its operands
+    private static class Frame {
+        private final JmmNode node;
+        private final Type expected;
+        private final List<Element> operands = new ArrayList<>();
+        // Value of a parenthesized expression, which is not stored in a temporary
+        private Instruction value;
+        private int next;
+
+        private Frame(JmmNode node, Type expected) {
+            this.node = node;
+            this.expected = expected;
+        }
+
+        private Type operandType() {
+            switch (node.getKind()) {
+                case "PrioExpr":
+                    return expected;
+                case "UnaryOp":
+                    return new Type(ElementType.BOOLEAN);
+                default:
+                    String op = node.get("op");
+                    return new Type(op.equals("&&") || op.equals("||") ? ElementType.BOOLEAN : ElementType.INT32);
+            }
+        }
+
+        private Instruction apply() {
+            switch (node.getKind()) {
+                case "PrioExpr":
+                    return value;
+                case "UnaryOp":
+                    Type type = new Type(ElementType.BOOLEAN);
+                    return new UnaryOpInstruction(new Operation(OperationType.NOTB, type), operands.get(0));
+                default:
+                    String op = node.get("op");
+                    boolean isArithmetic = op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/");
+                    Type resultType = new Type(isArithmetic ? ElementType.INT32 : ElementType.BOOLEAN);
+                    return new BinaryOpInstruction(operands.get(0), new Operation(operationType(op), resultType), operands.get(1));
+            }
+        }
+    }
+
+    private static OperationType operationType(String op) {
+        switch (op) {
+            case "+":
+                return OperationType.ADD;
+            case "-":
+                return OperationType.SUB;
+            case "*":
+                return OperationType.MUL;
+            case "/":
+                return OperationType.DIV;
+            case "<":
+                return OperationType.LTH;
+            case ">":
+                return OperationType.GTH;
+            case "&&":
+                return OperationType.ANDB;
+            case "||":
+                return OperationType.ORB;
+            default:
+                throw new RuntimeException("Unknown binary operator '" + op + "'");
+        }
+    }
+
+    private Instruction visitMethodCall(JmmNode node, Type expected) {
+        JmmNode target = node.getJmmChild(0);
+        JmmNode call = node.getJmmChild(1);
+        String name = call.get("methodName");
+        String className = symbolTable.getClassName();
+
+        Element first;
+        CallType callType;
+        boolean isOwnClass;
+        if (target.getKind().equals("Identifier") && isClassName(target)) {
+            first = new Operand(target.get("value"), new ClassType(ElementType.CLASS, className));
+            callType = CallType.invokestatic;
+            isOwnClass = target.get("value").equals(className);
+        } else {
+            first = toOperand(target, null);
+            callType = CallType.invokevirtual;
+            isOwnClass = first.getType() instanceof ClassType && ((ClassType) first.getType()).getName().equals(className);
+        }
+
+        // Methods of this class have known signatures, the others take the types of the arguments and of the context
+        boolean isKnown = isOwnClass && symbolTable.getMethods().contains(name);
+        List<Symbol> params = isKnown ? symbolTable.getParameters(name) : List.of();
+
+        ArrayList<Element> args = new ArrayList<>();
+        for (int i = 0; i < call.getNumChildren(); i++) {
+            JmmNode arg = call.getJmmChild(i);
+            Type argType = i < params.size() ? toOllirType(params.get(i).getType()) : semanticType(arg);
+            args.add(toOperand(arg, argType));
+        }
+
+        Type returnType;
+        if (isKnown) {
+            returnType = toOllirType(symbolTable.getReturnType(name));
+        } else if (expected != null) {
+            returnType = expected;
+        } else {
+            returnType = semanticType(node);
+        }
+
+        return new CallInstruction(callType, first, methodLiteral(name), args, returnType);
+    }
+
+    private Instruction visitArrayExpr(JmmNode node, Type expected) {
+        Operand array = (Operand) toOperand(node.getJmmChild(0), null);
+        Element index = toOperand(node.getJmmChild(1), new Type(ElementType.INT32));
+        return new SingleOpInstruction(new ArrayOperand(array.getName(), elementType(array.getType()), new ArrayList<>(List.of(index))));
+    }
+
+    private Instruction visitLength(JmmNode node, Type expected) {
+        Element array = toOperand(node.getJmmChild(0), null);
+        return new CallInstruction(CallType.arraylength, array, new Type(ElementType.INT32));
+    }
+
+    private Instruction visitArrayInit(JmmNode node, Type expected) {
+        Element size = toOperand(node.getJmmChild(0), new Type(ElementType.INT32));
+        Type type = toOllirType(node.get("value"), true);
+        return new CallInstruction(CallType.NEW, new Operand("array", new ArrayType()), new ArrayList<>(List.of(size)), type);
+    }
+
+    private Instruction visitConstructor(JmmNode node, Type expected) {
+        String name = node.get("className");
+        ClassType type = new ClassType(ElementType.OBJECTREF, name);
+
+        Operand temp = newTemp(type);
+        addInstruction(new AssignInstruction(temp, type, new CallInstruction(CallType.NEW, new Operand(name, type), new ArrayList<>(), type)));
+        addInstruction(new CallInstruction(CallType.invokespecial, temp, methodLiteral("<init>"), new ArrayList<>(), new Type(ElementType.VOID)));
+        return new SingleOpInstruction(temp);
+    }
+
+    private Instruction visitInteger(JmmNode node, Type expected) {
+        return new SingleOpInstruction(new LiteralElement(node.get("value"), new Type(ElementType.INT32)));
+    }
+
+    private Instruction visitBoolExpr(JmmNode node, Type expected) {
+        String value = node.get("value").equals("true") ? "1" : "0";
+        return new SingleOpInstruction(new LiteralElement(value, new Type(ElementType.BOOLEAN)));
+    }
+
+    private Instruction visitReference(JmmNode node, Type expected) {
+        return new SingleOpInstruction(thisOperand());
+    }
+
+    private Instruction visitIdentifier(JmmNode node, Type expected) {
+        String name = node.get("value");
+        int nameId = Identifiers.id(node, "value");
+
+        Symbol variable = findVariable(nameId);
+        if (variable != null) {
+            return new SingleOpInstruction(variableOperand(variable));
+        }
+
+        Symbol field = findField(nameId);
+        if (field != null) {
+            Type type = toOllirType(field.getType());
+            return new GetFieldInstruction(thisOperand(), new Operand(name, type), type);
+        }
+
+        return new SingleOpInstruction(new Operand(name, new ClassType(ElementType.CLASS, symbolTable.getClassName())));
+    }
+
+    // Helpers
+
+    private void addInstruction(Instruction instruction) {
+        method.addInstr(instruction);
+        for (String label : pendingLabels) {
+            method.addLabel(label, instruction);
+        }
+        pendingLabels.clear();
+    }
+
+    private Operand newTemp(Type type) {
+        String name;
+        do {
+            name = "temp_" + tempCounter++;
+        } while (variableNames.contains(name));
+        temporaries++;
+        return new Operand(name, type);
+    }
+
+    private Element toOperand(JmmNode node, Type expected) {
+        return asOperand(visit(node, expected));
+    }
+
+    // Variables and literals are used as they are, any other value is stored in a new temporary
+    private Element asOperand(Instruction instruction) {
+        if (instruction instanceof SingleOpInstruction) {
+            Element operand = ((SingleOpInstruction) instruction).getSingleOperand();
+            if (!(operand instanceof ArrayOperand)) {
+                return operand;
+            }
+        }
+
+        Operand temp = newTemp(typeOf(instruction));
+        addInstruction(new AssignInstruction(temp, temp.getType(), instruction));
+        return temp;
+    }
+
+    private static Type typeOf(Instruction instruction) {
+        if (instruction instanceof SingleOpInstruction) {
+            return ((SingleOpInstruction) instruction).getSingleOperand().getType();
+        }
+        if (instruction instanceof CallInstruction) {
+            return ((CallInstruction) instruction).getReturnType();
+        }
+        if (instruction instanceof OpInstruction) {
+            return ((OpInstruction) instruction).getOperation().getTypeInfo();
+        }
+        if (instruction instanceof GetFieldInstruction) {
+            return ((GetFieldInstruction) instruction).getFieldType();
+        }
+        throw new RuntimeException("Instruction " + instruction.getInstType() + " does not produce a value");
+    }
+
+    // Type given by the semantic analysis, int when it could not be inferred
+    private static Type semanticType(JmmNode node) {
+        var type = Types.optionalTypeOf(node).orElse(Types.INFERRED);
+        if (type == Types.INFERRED || type == Types.NULL) {
+            return new Type(ElementType.INT32);
+        }
+        return toOllirType(type);
+    }
+
+    // Locals hide parameters, which hide fields, in the same order as the semantic analysis
+    private Symbol findVariable(int nameId) {
+        return scope.getVariable(nameId);
+    }
+
+    private Symbol findField(int nameId) {
+        return scope.getField(nameId);
+    }
+
+    private boolean isClassName(JmmNode identifier) {
+        int nameId = Identifiers.id(identifier, "value");
+        if (findVariable(nameId) != null || findField(nameId) != null) {
+            return false;
+        }
+        String name = identifier.get("value");
+        return name.equals(symbolTable.getClassName()) || classUnit.isImportedClass(name);
+    }
+
+    private Operand variableOperand(Symbol symbol) {
+        return new Operand(getSafeVariableName(symbol.getName()), toOllirType(symbol.getType()));
+    }
+
+    // Array stored in a variable, or in a field, which is loaded to a temporary first
+    private Operand arrayOperand(int nameId) {
+        Symbol variable = findVariable(nameId);
+        if (variable != null) {
+            return variableOperand(variable);
+        }
+        Symbol field = findField(nameId);
+        Type type = toOllirType(field.getType());
+        return (Operand) asOperand(new GetFieldInstruction(thisOperand(), new Operand(field.getName(), type), type));
+    }
+
+    private Operand thisOperand() {
+        return new Operand("this", new ClassType(ElementType.THIS, symbolTable.getClassName()));
+    }
+
+    private static LiteralElement methodLiteral(String name) {
+        return new LiteralElement("\"" + name + "\"", new Type(ElementType.STRING));
+    }
+}
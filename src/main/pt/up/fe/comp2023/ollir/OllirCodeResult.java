@@ -1,5 +0,0 @@
-package pt.up.fe.comp2023.ollir;
-
-public record OllirCodeResult(String prefixCode, String value) {
-
-}
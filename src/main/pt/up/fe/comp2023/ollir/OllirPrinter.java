@@ -0,0 +1,240 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Prints a ClassUnit as OLLIR text. The backends work on the ClassUnit directly, the text is only needed
+// to show the intermediate code and as a key for the stage cache.
+public class OllirPrinter {
+
+    private final ClassUnit classUnit;
+    private final StringBuilder code = new StringBuilder();
+
+    public OllirPrinter(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+    }
+
+    public String getCode() {
+        code.setLength(0);
+
+        for (String path : classUnit.getImports()) {
+            code.append("import ").append(path).append(";\n");
+        }
+        code.append("\n").append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null) {
+            code.append(" extends ").append(classUnit.getSuperClass());
+        }
+        code.append(" {\n");
+
+        for (Field field : classUnit.getFields()) {
+            code.append("\t.field ").append(accessModifier(field.getFieldAccessModifier()))
+                    .append(field.getFieldName()).append(type(field.getFieldType())).append(";\n");
+        }
+
+        for (Method method : classUnit.getMethods()) {
+            printMethod(method);
+        }
+
+        code.append("}\n");
+        return code.toString();
+    }
+
+    private void printMethod(Method method) {
+        code.append("\n\t");
+        if (method.isConstructMethod()) {
+            code.append(".construct ").append(classUnit.getClassName());
+        } else {
+            code.append(".method ").append(accessModifier(method.getMethodAccessModifier()));
+            if (method.isStaticMethod()) {
+                code.append("static ");
+            }
+            code.append(method.getMethodName());
+        }
+
+        String params = method.getParams().stream().map(this::element).collect(Collectors.joining(", "));
+        code.append("(").append(params).append(")").append(type(method.getReturnType())).append(" {\n");
+
+        for (Instruction instruction : method.getInstructions()) {
+            for (String label : method.getLabels(instruction)) {
+                code.append("\t").append(label).append(":\n");
+            }
+            code.append("\t\t").append(instruction(instruction)).append(";\n");
+        }
+
+        code.append("\t}\n");
+    }
+
+    private String instruction(Instruction instruction) {
+        switch (instruction.getInstType()) {
+            case ASSIGN: {
+                var assign = (AssignInstruction) instruction;
+                return element(assign.getDest()) + " :=" + type(assign.getTypeOfAssign()) + " " + instruction(assign.getRhs());
+            }
+            case CALL:
+                return call((CallInstruction) instruction);
+            case GOTO:
+                return "goto " + ((GotoInstruction) instruction).getLabel();
+            case BRANCH: {
+                var branch = (CondBranchInstruction) instruction;
+                return "if (" + instruction(branch.getCondition()) + ") goto " + branch.getLabel();
+            }
+            case RETURN: {
+                var ret = (ReturnInstruction) instruction;
+                if (!ret.hasReturnValue()) {
+                    return "ret.V";
+                }
+                return "ret" + type(ret.getReturnType()) + " " + element(ret.getOperand());
+            }
+            case GETFIELD: {
+                var getField = (GetFieldInstruction) instruction;
+                return "getfield(" + element(getField.getFirstOperand()) + ", " + element(getField.getSecondOperand()) + ")"
+                        + type(getField.getFieldType());
+            }
+            case PUTFIELD: {
+                var putField = (PutFieldInstruction) instruction;
+                return "putfield(" + element(putField.getFirstOperand()) + ", " + element(putField.getSecondOperand()) + ", "
+                        + element(putField.getThirdOperand()) + ").V";
+            }
+            case UNARYOPER: {
+                var unary = (UnaryOpInstruction) instruction;
+                return operation(unary.getOperation()) + " " + element(unary.getOperand());
+            }
+            case BINARYOPER: {
+                var binary = (BinaryOpInstruction) instruction;
+                return element(binary.getLeftOperand()) + " " + operation(binary.getOperation()) + " "
+                        + element(binary.getRightOperand());
+            }
+            case NOPER:
+                return element(((SingleOpInstruction) instruction).getSingleOperand());
+            default:
+                throw new RuntimeException("Cannot print instruction " + instruction.getInstType());
+        }
+    }
+
+    private String call(CallInstruction call) {
+        var code = new StringBuilder(call.getInvocationType().name().toLowerCase()).append("(");
+        Element first = call.getFirstArg();
+
+        switch (call.getInvocationType()) {
+            case invokestatic:
+                code.append(((Operand) first).getName());
+                break;
+            case NEW:
+                code.append(first.getType() instanceof ArrayType ? "array" : ((Operand) first).getName());
+                break;
+            default:
+                code.append(element(first));
+        }
+
+        if (call.getSecondArg() != null) {
+            code.append(", ").append(element(call.getSecondArg()));
+        }
+        List<Element> operands = call.getListOfOperands();
+        if (operands != null) {
+            for (Element operand : operands) {
+                code.append(", ").append(element(operand));
+            }
+        }
+
+        return code.append(")").append(type(call.getReturnType())).toString();
+    }
+
+    private String element(Element element) {
+        if (element instanceof LiteralElement) {
+            String literal = ((LiteralElement) element).getLiteral();
+            // Method names already carry their quotes and have no type suffix
+            return element.getType().getTypeOfElement() == ElementType.STRING ? literal : literal + type(element.getType());
+        }
+
+        var operand = (Operand) element;
+        String name = operand.getName();
+        if (operand instanceof ArrayOperand) {
+            String indexes = ((ArrayOperand) operand).getIndexOperands().stream()
+                    .map(this::element)
+                    .collect(Collectors.joining("]["));
+            return name + "[" + indexes + "]" + type(operand.getType());
+        }
+        return name + type(operand.getType());
+    }
+
+    private static String operation(Operation operation) {
+        return symbol(operation.getOpType()) + type(operation.getTypeInfo());
+    }
+
+    private static String symbol(OperationType operationType) {
+        switch (operationType) {
+            case ADD:
+                return "+";
+            case SUB:
+                return "-";
+            case MUL:
+                return "*";
+            case DIV:
+                return "/";
+            case SHL:
+                return "<<";
+            case SHR:
+                return ">>";
+            case SHRR:
+                return ">>>";
+            case XOR:
+                return "^";
+            case AND:
+                return "&";
+            case OR:
+                return "|";
+            case LTH:
+                return "<";
+            case GTH:
+                return ">";
+            case EQ:
+                return "==";
+            case NEQ:
+                return "!=";
+            case LTE:
+                return "<=";
+            case GTE:
+                return ">=";
+            case ANDB:
+                return "&&";
+            case ORB:
+                return "||";
+            case NOT:
+            case NOTB:
+                return "!";
+            default:
+                throw new RuntimeException("Unknown operation " + operationType);
+        }
+    }
+
+    private static String type(Type type) {
+        return "." + typeName(type);
+    }
+
+    private static String typeName(Type type) {
+        switch (type.getTypeOfElement()) {
+            case INT32:
+                return "i32";
+            case BOOLEAN:
+                return "bool";
+            case STRING:
+                return "String";
+            case VOID:
+                return "V";
+            case ARRAYREF:
+                return "array." + typeName(((ArrayType) type).getElementType());
+            case OBJECTREF:
+            case CLASS:
+            case THIS:
+                return ((ClassType) type).getName();
+            default:
+                throw new RuntimeException("Cannot print type " + type.getTypeOfElement());
+        }
+    }
+
+    private static String accessModifier(AccessModifiers accessModifier) {
+        return accessModifier == AccessModifiers.DEFAULT ? "" : accessModifier.name().toLowerCase() + " ";
+    }
+}
@@ -1,53 +1,59 @@
 package pt.up.fe.comp2023.ollir;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
-import java.util.List;
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ElementType;
+import org.specs.comp.ollir.Type;
+import pt.up.fe.comp2023.semantic.Identifiers;
 
 public class OllirUtils {
-    public static String getOllirType(String type) {
+    // Indexed by the IDs of the built in types
+    private static final ElementType[] BUILT_IN_TYPES = new ElementType[Identifiers.STRING + 1];
 
-        if (type.equals("int")) {
-            return "i32";
-        }
-        if (type.equals("boolean")) {
-            return "bool";
-        }
-        if (type.equals("void")) {
-            return "V";
-        }
-        return type;
-    }
-    public static String getOllirType(Symbol symbol) {
-        return getOllirType(symbol.getType().getName());
+    static {
+        BUILT_IN_TYPES[Identifiers.INT] = ElementType.INT32;
+        BUILT_IN_TYPES[Identifiers.BOOLEAN] = ElementType.BOOLEAN;
+        BUILT_IN_TYPES[Identifiers.VOID] = ElementType.VOID;
+        BUILT_IN_TYPES[Identifiers.STRING] = ElementType.STRING;
     }
 
-    public static String invoke(String invokeFunction, String className, String methodName, List<String> arguments, String ollirMethodType) {
-        StringBuilder stringBuilder = new StringBuilder(invokeFunction + "(" + className + ", " + "\"" + methodName + "\"");
-        if (!arguments.isEmpty()) {
-            stringBuilder.append(", ");
-            for (var arg : arguments) {
-                stringBuilder.append(arg).append(", ");
-            }
-            stringBuilder.delete(stringBuilder.lastIndexOf(","), stringBuilder.length());
-        }
-        stringBuilder.append(").").append(ollirMethodType);
-        return stringBuilder.toString();
+    public static Type toOllirType(pt.up.fe.comp.jmm.analysis.table.Type type) {
+        return toOllirType(type.getName(), type.isArray());
     }
 
-    public static String getField(String className, String field, String ollirType) {
-        return "getfield(" + className + ", " + field + "." + ollirType + ")." + ollirType;
+    public static Type toOllirType(String typeName, boolean isArray) {
+        return toOllirType(Identifiers.id(typeName), isArray);
     }
 
-    public static String putField(String className, String variableName, String value) {
-        return "putfield(" + className + ", " + variableName + ", " + value + ").V";
+    public static Type toOllirType(int typeId, boolean isArray) {
+        if (isArray) {
+            ArrayType arrayType = new ArrayType();
+            arrayType.setNumDimensions(1);
+            arrayType.setTypeOfElements(toOllirType(typeId, false).getTypeOfElement());
+            if (typeId != Identifiers.INT && typeId != Identifiers.BOOLEAN) {
+                arrayType.setElementClass(Identifiers.name(typeId));
+            }
+            return arrayType;
+        }
+
+        if (typeId < BUILT_IN_TYPES.length) {
+            return new Type(BUILT_IN_TYPES[typeId]);
+        }
+        return new ClassType(ElementType.OBJECTREF, Identifiers.name(typeId));
     }
 
-    public static String arrayLength(String variableName, String elementOllirType) {
-        return "arraylength(" + variableName + ".array." + elementOllirType + ").i32";
+    // Type of the elements stored in an array of the given type
+    public static Type elementType(Type arrayType) {
+        if (arrayType instanceof ArrayType) {
+            return ((ArrayType) arrayType).getElementType();
+        }
+        return new Type(ElementType.INT32);
     }
 
     public static String getSafeVariableName(String variableName) {
-        final String[] reserved = {"ret", "putfield", "getstatic", "invokespecial", "invokestatic", "invokevirtual"};
+        // OLLIR keywords that are valid Java-- identifiers
+        final String[] reserved = {"ret", "array", "bool", "i32", "V", "final", "goto", "interface", "package", "private", "protected", "ldc",
+                "arraylength", "getfield", "putfield", "getstatic", "putstatic", "invokespecial", "invokestatic", "invokevirtual", "invokeinterface"};
         for (var r : reserved) {
             if (variableName.equals(r)) {
                 return variableName + "_";
@@ -0,0 +1,259 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Gives the locals and temporaries of a method the fewest JVM registers it can, by coloring the interference graph
+// built from the liveness of the variables. 'this' and the parameters keep the registers the JVM passes them in.
+// Variables copied into one another are coalesced when that cannot make the graph harder to color, and otherwise
+// are still given the same register when it is free.
+public class RegisterAllocator {
+
+    private final Method method;
+    // Registers available, 0 for as few as possible
+    private final int maxRegisters;
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    // Register of each variable, -1 until it is colored
+    private int[] colors;
+    // 'this' and the parameters, whose registers are given
+    private boolean[] fixed;
+    private List<Set<Integer>> neighbors;
+    private List<Set<Integer>> partners;
+    private int[] representatives;
+
+    public RegisterAllocator(Method method, int maxRegisters) {
+        this.method = method;
+        this.maxRegisters = maxRegisters;
+    }
+
+    // Allocates the registers of every method of the class, reporting the methods that do not fit in the limit
+    public static List<Report> allocate(ClassUnit classUnit, int maxRegisters) {
+        List<Report> reports = new ArrayList<>();
+        for (Method method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) {
+                continue;
+            }
+            int used = new RegisterAllocator(method, maxRegisters).allocate();
+            if (maxRegisters > 0 && used > maxRegisters) {
+                // The coloring is greedy, so this many registers are enough but fewer might also be
+                reports.add(new Report(ReportType.ERROR, Stage.OPTIMIZATION, -1, "Method '" + method.getMethodName()
+                        + "' could not fit in " + maxRegisters + " registers (used " + used + ")."));
+            }
+        }
+        return reports;
+    }
+
+    // Rewrites the registers in the variable table of the method and returns how many it uses
+    public int allocate() {
+        method.buildVarTable();
+        method.getVarTable().forEach((name, descriptor) -> {
+            if (descriptor.getScope() != VarScope.FIELD) {
+                indexes.put(name, names.size());
+                names.add(name);
+            }
+        });
+
+        colors = new int[names.size()];
+        fixed = new boolean[names.size()];
+        neighbors = new ArrayList<>();
+        partners = new ArrayList<>();
+        representatives = new int[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            neighbors.add(new HashSet<>());
+            partners.add(new HashSet<>());
+            representatives[i] = i;
+            fixed[i] = isFixed(names.get(i));
+            colors[i] = fixed[i] ? method.getVarTable().get(names.get(i)).getVirtualReg() : -1;
+        }
+
+        buildGraph();
+        // Without a limit, coalescing must not need more registers than the variables need without it
+        int k = maxRegisters > 0 ? maxRegisters : select(order()) + 1;
+        coalesce(k);
+        int used = select(order()) + 1;
+
+        int reserved = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+        for (int i = 0; i < names.size(); i++) {
+            method.getVarTable().get(names.get(i)).setVirtualReg(colors[find(i)]);
+        }
+        return Math.max(used, reserved);
+    }
+
+    private boolean isFixed(String name) {
+        Descriptor descriptor = method.getVarTable().get(name);
+        return name.equals("this") || descriptor.getScope() == VarScope.PARAMETER;
+    }
+
+    // A variable interferes with every variable live after the instructions that write it, except the one it is
+    // copied from. 'this', the parameters and anything read before being written are all written on entry.
+    private void buildGraph() {
+        Liveness liveness = new Liveness(method, indexes);
+
+        liveness.scan((instruction, liveOut) -> {
+            int def = liveness.getDef(instruction);
+            if (def == -1) {
+                return;
+            }
+            int source = copySource(method.getInstr(instruction));
+            if (source != -1 && source != def) {
+                partners.get(def).add(source);
+                partners.get(source).add(def);
+            }
+            liveOut.stream().filter(live -> live != def && live != source).forEach(live -> addEdge(def, live));
+        });
+
+        BitSet entry = (BitSet) liveness.getLiveAtEntry().clone();
+        for (int i = 0; i < names.size(); i++) {
+            if (fixed[i]) {
+                entry.set(i);
+            }
+        }
+        entry.stream().forEach(a -> entry.stream().filter(b -> a < b).forEach(b -> addEdge(a, b)));
+    }
+
+    private int copySource(Instruction instruction) {
+        if (!(instruction instanceof AssignInstruction)) {
+            return -1;
+        }
+        Instruction rhs = ((AssignInstruction) instruction).getRhs();
+        if (!(rhs instanceof SingleOpInstruction)) {
+            return -1;
+        }
+        Element operand = ((SingleOpInstruction) rhs).getSingleOperand();
+        if (operand.isLiteral() || operand instanceof ArrayOperand || !(operand instanceof Operand)) {
+            return -1;
+        }
+        return indexes.getOrDefault(((Operand) operand).getName(), -1);
+    }
+
+    private void addEdge(int a, int b) {
+        neighbors.get(a).add(b);
+        neighbors.get(b).add(a);
+    }
+
+    // Merges the variables copied into one another that do not interfere, when the merged variable has fewer
+    // than k neighbors with k or more neighbors, so it can still be colored with k registers (Briggs' test)
+    private void coalesce(int k) {
+        for (int a = 0; a < names.size(); a++) {
+            for (int b : new ArrayList<>(partners.get(a))) {
+                int x = find(a);
+                int y = find(b);
+                if (x == y || fixed[x] || fixed[y] || neighbors.get(x).contains(y)) {
+                    continue;
+                }
+
+                Set<Integer> merged = new HashSet<>(neighbors.get(x));
+                merged.addAll(neighbors.get(y));
+                long significant = merged.stream().filter(n -> neighbors.get(n).size() >= k).count();
+                if (significant >= k) {
+                    continue;
+                }
+
+                representatives[y] = x;
+                for (int n : neighbors.get(y)) {
+                    neighbors.get(n).remove(y);
+                    neighbors.get(n).add(x);
+                }
+                neighbors.get(x).addAll(neighbors.get(y));
+                neighbors.get(y).clear();
+                partners.get(x).addAll(partners.get(y));
+            }
+        }
+    }
+
+    private int find(int variable) {
+        while (representatives[variable] != variable) {
+            representatives[variable] = representatives[representatives[variable]];
+            variable = representatives[variable];
+        }
+        return variable;
+    }
+
+    // Variables still to color, removing the one with the fewest neighbors left each time, so they are colored
+    // from the last removed to the first
+    private List<Integer> order() {
+        int[] degrees = new int[names.size()];
+        boolean[] removed = new boolean[names.size()];
+        PriorityQueue<long[]> queue = new PriorityQueue<>((p, q) -> Long.compare(p[0], q[0]));
+        for (int i = 0; i < names.size(); i++) {
+            if (find(i) == i && !fixed[i]) {
+                degrees[i] = neighbors.get(i).size();
+                queue.add(new long[]{degrees[i], i});
+            } else {
+                removed[i] = true;
+            }
+        }
+
+        List<Integer> order = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int variable = (int) entry[1];
+            if (removed[variable] || entry[0] != degrees[variable]) {
+                continue;
+            }
+            removed[variable] = true;
+            order.add(variable);
+            for (int n : neighbors.get(variable)) {
+                if (!removed[n]) {
+                    degrees[n]--;
+                    queue.add(new long[]{degrees[n], n});
+                }
+            }
+        }
+        return order;
+    }
+
+    // Colors the variables in the reverse of the order, preferring the register of a variable they are copied
+    // from or to, and returns the highest register used
+    private int select(List<Integer> order) {
+        for (int variable : order) {
+            colors[variable] = -1;
+        }
+
+        int highest = -1;
+        for (int i = 0; i < names.size(); i++) {
+            if (fixed[i]) {
+                highest = Math.max(highest, colors[i]);
+            }
+        }
+
+        for (int j = order.size() - 1; j >= 0; j--) {
+            int variable = order.get(j);
+            BitSet taken = new BitSet();
+            // Register 0 holds 'this', even when the method never reads it
+            if (!method.isStaticMethod()) {
+                taken.set(0);
+            }
+            for (int n : neighbors.get(variable)) {
+                if (colors[n] != -1) {
+                    taken.set(colors[n]);
+                }
+            }
+
+            int color = taken.nextClearBit(0);
+            for (int partner : partners.get(variable)) {
+                int partnerColor = colors[find(partner)];
+                if (partnerColor != -1 && !taken.get(partnerColor)) {
+                    color = partnerColor;
+                    break;
+                }
+            }
+            colors[variable] = color;
+            highest = Math.max(highest, color);
+        }
+        return highest;
+    }
+}
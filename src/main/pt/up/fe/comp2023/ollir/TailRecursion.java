@@ -0,0 +1,185 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Turns the calls a method makes to itself on 'this' whose result is returned right away into assignments to its
+// parameters and a jump back to its first instruction, so the recursion runs as a loop without growing the stack.
+// The result may be copied to other variables and go through gotos before it is returned, as when it is assigned
+// in one branch of an if and returned after it. Java-- has no final methods, so the method is assumed not to be
+// overridden by a class that extends this one.
+public class TailRecursion {
+
+    private static final String ENTRY_LABEL = "tailcall";
+
+    private final Method method;
+    private final List<Instruction> instructions;
+    private final Map<Instruction, List<String>> labels = new IdentityHashMap<>();
+    private final Set<String> names = new HashSet<>();
+    private String entryLabel;
+    private int tempCounter;
+
+    public TailRecursion(Method method) {
+        this.method = method;
+        this.instructions = method.getInstructions();
+    }
+
+    // Optimizes every instance method of the class, returns how many calls were replaced by jumps
+    public static int optimize(ClassUnit classUnit) {
+        int eliminated = 0;
+        for (Method method : classUnit.getMethods()) {
+            if (!method.isConstructMethod() && !method.isStaticMethod()) {
+                eliminated += new TailRecursion(method).optimize();
+            }
+        }
+        return eliminated;
+    }
+
+    public int optimize() {
+        method.getLabels().forEach((label, instruction) -> labels.computeIfAbsent(instruction, key -> new ArrayList<>()).add(label));
+        names.addAll(method.getVarTable().keySet());
+
+        int eliminated = 0;
+        // Backwards, so the indexes of the calls not visited yet do not move
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (isTailCall(i)) {
+                replaceCall(i);
+                eliminated++;
+            }
+        }
+        return eliminated;
+    }
+
+    private boolean isTailCall(int index) {
+        if (!(instructions.get(index) instanceof AssignInstruction)) {
+            return false;
+        }
+        AssignInstruction assign = (AssignInstruction) instructions.get(index);
+        if (!(assign.getRhs() instanceof CallInstruction) || assign.getDest() instanceof ArrayOperand) {
+            return false;
+        }
+        CallInstruction call = (CallInstruction) assign.getRhs();
+        if (call.getInvocationType() != CallType.invokevirtual
+                || call.getFirstArg().getType().getTypeOfElement() != ElementType.THIS
+                || !((LiteralElement) call.getSecondArg()).getLiteral().equals("\"" + method.getMethodName() + "\"")) {
+            return false;
+        }
+        List<Element> arguments = call.getListOfOperands() != null ? call.getListOfOperands() : List.of();
+        if (arguments.size() != method.getParams().size()) {
+            return false;
+        }
+        for (int i = 0; i < arguments.size(); i++) {
+            if (arguments.get(i).getType().getTypeOfElement() != method.getParams().get(i).getType().getTypeOfElement()) {
+                return false;
+            }
+        }
+
+        // Follows the result through copies and gotos, until it is returned or something else is done
+        String result = ((Operand) assign.getDest()).getName();
+        Set<Instruction> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int i = index + 1;
+        while (i < instructions.size() && seen.add(instructions.get(i))) {
+            Instruction instruction = instructions.get(i);
+            if (instruction instanceof ReturnInstruction) {
+                ReturnInstruction ret = (ReturnInstruction) instruction;
+                return ret.hasReturnValue() && ret.getOperand() instanceof Operand
+                        && ((Operand) ret.getOperand()).getName().equals(result);
+            }
+            if (instruction instanceof GotoInstruction) {
+                i = instructions.indexOf(method.getLabels().get(((GotoInstruction) instruction).getLabel()));
+            } else if (isCopyOf(instruction, result)) {
+                result = ((Operand) ((AssignInstruction) instruction).getDest()).getName();
+                i++;
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // Assigns the arguments to the parameters and jumps to the first instruction. A parameter read by an argument
+    // after it was assigned is saved first. The instructions after the call are only reached through a label
+    private void replaceCall(int index) {
+        CallInstruction call = (CallInstruction) ((AssignInstruction) instructions.get(index)).getRhs();
+        List<Element> arguments = new ArrayList<>(call.getListOfOperands() != null ? call.getListOfOperands() : List.of());
+        List<Element> params = method.getParams();
+
+        List<Instruction> replacement = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            Operand param = (Operand) params.get(i);
+            boolean readLater = false;
+            for (int j = i + 1; j < arguments.size(); j++) {
+                readLater |= isVariable(arguments.get(j), param.getName());
+            }
+            if (readLater && !isVariable(arguments.get(i), param.getName())) {
+                Operand saved = newTemp(param.getType());
+                replacement.add(new AssignInstruction(saved, saved.getType(), new SingleOpInstruction(param)));
+                for (int j = i + 1; j < arguments.size(); j++) {
+                    if (isVariable(arguments.get(j), param.getName())) {
+                        arguments.set(j, saved);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < params.size(); i++) {
+            Operand param = (Operand) params.get(i);
+            if (!isVariable(arguments.get(i), param.getName())) {
+                Operand dest = new Operand(param.getName(), param.getType());
+                replacement.add(new AssignInstruction(dest, dest.getType(), new SingleOpInstruction(arguments.get(i))));
+            }
+        }
+        replacement.add(new GotoInstruction(entryLabel()));
+
+        int end = index + 1;
+        while (end < instructions.size() && !labels.containsKey(instructions.get(end))) {
+            end++;
+        }
+        List<String> callLabels = labels.remove(instructions.get(index));
+        List<Instruction> range = instructions.subList(index, end);
+        range.clear();
+        range.addAll(replacement);
+        if (callLabels != null) {
+            callLabels.forEach(label -> method.getLabels().put(label, replacement.get(0)));
+            labels.put(replacement.get(0), callLabels);
+        }
+    }
+
+    private String entryLabel() {
+        if (entryLabel == null) {
+            entryLabel = ENTRY_LABEL;
+            for (int i = 0; method.getLabels().containsKey(entryLabel); i++) {
+                entryLabel = ENTRY_LABEL + "_" + i;
+            }
+            method.getLabels().put(entryLabel, instructions.get(0));
+            labels.computeIfAbsent(instructions.get(0), key -> new ArrayList<>()).add(entryLabel);
+        }
+        return entryLabel;
+    }
+
+    private Operand newTemp(Type type) {
+        String name;
+        do {
+            name = "temp_" + tempCounter++;
+        } while (!names.add(name));
+        return new Operand(name, type);
+    }
+
+    private static boolean isCopyOf(Instruction instruction, String variable) {
+        if (!(instruction instanceof AssignInstruction) || ((AssignInstruction) instruction).getDest() instanceof ArrayOperand) {
+            return false;
+        }
+        Instruction rhs = ((AssignInstruction) instruction).getRhs();
+        return rhs instanceof SingleOpInstruction && isVariable(((SingleOpInstruction) rhs).getSingleOperand(), variable);
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return !element.isLiteral() && !(element instanceof ArrayOperand) && ((Operand) element).getName().equals(name);
+    }
+}
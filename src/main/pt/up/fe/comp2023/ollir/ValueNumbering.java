@@ -0,0 +1,466 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Gives every value computed in a method a number, so an expression whose operands have the same numbers as one
+// computed before is replaced by the variable that still holds it, and the uses of a copy read the original
+// variable. The numbers of a block carry over to the blocks it is the only predecessor of, so a value computed
+// before an if is reused in both branches, and are forgotten at the blocks that paths join. Array elements and
+// fields are numbered too, until a store or a call may change them. The copies left without uses are removed.
+public class ValueNumbering {
+
+    private static final Set<OperationType> COMMUTATIVE = Set.of(OperationType.ADD, OperationType.MUL,
+            OperationType.AND, OperationType.ANDB, OperationType.OR, OperationType.ORB, OperationType.EQ,
+            OperationType.NEQ);
+    // Memory versions changed by the stores to any array and by the calls, fields use their own name
+    private static final String ARRAYS = "[]";
+    private static final String CALLS = "()";
+
+    private final Method method;
+    private final List<Instruction> instructions;
+    private final Map<Instruction, List<String>> labels = new IdentityHashMap<>();
+
+    // Number of the value each variable holds, of each expression and literal, and the version of the memory
+    private final Map<String, Integer> values = new HashMap<>();
+    private final Map<String, Integer> expressions = new HashMap<>();
+    private final Map<String, Integer> memory = new HashMap<>();
+    // First variable given each number, only used while it still holds that number
+    private final Map<Integer, Operand> holders = new HashMap<>();
+    // Restores the numbers of the predecessor when leaving a block
+    private final Deque<Runnable> undo = new ArrayDeque<>();
+    private int nextValue = 1;
+    private int reused;
+
+    public ValueNumbering(Method method) {
+        this.method = method;
+        this.instructions = method.getInstructions();
+    }
+
+    // Optimizes every method of the class, returns how many expressions were replaced by a variable
+    public static int optimize(ClassUnit classUnit) {
+        int reused = 0;
+        for (Method method : classUnit.getMethods()) {
+            if (!method.isConstructMethod()) {
+                reused += new ValueNumbering(method).optimize();
+            }
+        }
+        return reused;
+    }
+
+    public int optimize() {
+        method.getLabels().forEach((label, instruction) -> labels.computeIfAbsent(instruction, key -> new ArrayList<>()).add(label));
+        Map<Instruction, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            indexes.put(instructions.get(i), i);
+        }
+
+        // Blocks start at the first instruction, at every label and after every jump
+        BitSet leaders = new BitSet();
+        leaders.set(0);
+        for (Instruction target : method.getLabels().values()) {
+            leaders.set(indexes.get(target));
+        }
+        for (int i = 0; i < instructions.size(); i++) {
+            if (jumpTarget(instructions.get(i)) != null || instructions.get(i) instanceof ReturnInstruction) {
+                leaders.set(i + 1);
+            }
+        }
+        leaders.clear(instructions.size(), leaders.length() + 1);
+        int[] starts = leaders.stream().toArray();
+        int[] blockOf = new int[instructions.size()];
+        for (int block = 0; block < starts.length; block++) {
+            int end = block + 1 < starts.length ? starts[block + 1] : instructions.size();
+            for (int i = starts[block]; i < end; i++) {
+                blockOf[i] = block;
+            }
+        }
+
+        // The blocks with a single predecessor are visited right after it, with its numbers
+        int[] predecessors = new int[starts.length];
+        int[] predecessor = new int[starts.length];
+        List<List<Integer>> children = new ArrayList<>();
+        for (int block = 0; block < starts.length; block++) {
+            children.add(new ArrayList<>());
+        }
+        for (int block = 0; block < starts.length; block++) {
+            int end = block + 1 < starts.length ? starts[block + 1] : instructions.size();
+            Instruction last = instructions.get(end - 1);
+            String target = jumpTarget(last);
+            if (target != null) {
+                int successor = blockOf[indexes.get(method.getLabels().get(target))];
+                predecessors[successor]++;
+                predecessor[successor] = block;
+            }
+            if (!(last instanceof GotoInstruction) && !(last instanceof ReturnInstruction) && block + 1 < starts.length) {
+                predecessors[block + 1]++;
+                predecessor[block + 1] = block;
+            }
+        }
+        for (int block = 1; block < starts.length; block++) {
+            if (predecessors[block] == 1) {
+                children.get(predecessor[block]).add(block);
+            }
+        }
+
+        // The blocks that paths join start with no numbers, as do the ones whose predecessor is never reached
+        boolean[] visited = new boolean[starts.length];
+        for (int block = 0; block < starts.length; block++) {
+            if (block == 0 || predecessors[block] != 1) {
+                visitTree(block, starts, children, visited);
+            }
+        }
+        for (int block = 0; block < starts.length; block++) {
+            if (!visited[block]) {
+                visitTree(block, starts, children, visited);
+            }
+        }
+
+        removeUnusedCopies();
+        return reused;
+    }
+
+    // Visits the block and the blocks it is the only predecessor of, with an explicit stack as they can nest deeply
+    private void visitTree(int root, int[] starts, List<List<Integer>> children, boolean[] visited) {
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{root, -1});
+        while (!stack.isEmpty()) {
+            int[] frame = stack.pop();
+            if (frame[1] != -1) {
+                while (undo.size() > frame[1]) {
+                    undo.pop().run();
+                }
+                continue;
+            }
+            int block = frame[0];
+            visited[block] = true;
+            frame[1] = undo.size();
+            stack.push(frame);
+            int end = block + 1 < starts.length ? starts[block + 1] : instructions.size();
+            for (int i = starts[block]; i < end; i++) {
+                visit(i);
+            }
+            for (int child : children.get(block)) {
+                if (!visited[child]) {
+                    stack.push(new int[]{child, -1});
+                }
+            }
+        }
+    }
+
+    private void visit(int index) {
+        Instruction instruction = instructions.get(index);
+        replaceUses(instruction);
+
+        if (instruction instanceof AssignInstruction) {
+            AssignInstruction assign = (AssignInstruction) instruction;
+            Instruction rhs = assign.getRhs();
+            if (rhs instanceof CallInstruction) {
+                call((CallInstruction) rhs);
+            }
+            if (assign.getDest() instanceof ArrayOperand) {
+                // The element stored is known until the next store or call
+                ArrayOperand dest = (ArrayOperand) assign.getDest();
+                newVersion(ARRAYS);
+                if (rhs instanceof SingleOpInstruction && !(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand)) {
+                    set(expressions, loadKey(dest), valueOf(((SingleOpInstruction) rhs).getSingleOperand()));
+                }
+                return;
+            }
+
+            Operand dest = (Operand) assign.getDest();
+            Integer value;
+            if (isCopy(rhs)) {
+                value = valueOf(((SingleOpInstruction) rhs).getSingleOperand());
+            } else {
+                String key = key(rhs);
+                value = key != null ? expressions.get(key) : null;
+                Operand holder = value != null ? holder(value) : null;
+                if (holder != null) {
+                    replace(index, new AssignInstruction(dest, assign.getTypeOfAssign(), new SingleOpInstruction(holder)));
+                    reused++;
+                } else if (value == null) {
+                    value = nextValue++;
+                    if (key != null) {
+                        set(expressions, key, value);
+                    }
+                }
+            }
+            set(values, dest.getName(), value);
+            if (holder(value) == null) {
+                set(holders, value, dest);
+            }
+        } else if (instruction instanceof PutFieldInstruction) {
+            // The value stored is known until the next store to the field or call
+            PutFieldInstruction putField = (PutFieldInstruction) instruction;
+            String field = ((Operand) putField.getSecondOperand()).getName();
+            newVersion(field);
+            set(expressions, fieldKey(field), valueOf(putField.getThirdOperand()));
+        } else if (instruction instanceof CallInstruction) {
+            call((CallInstruction) instruction);
+        }
+    }
+
+    // Any method or constructor may store to the fields and the arrays
+    private void call(CallInstruction call) {
+        CallType type = call.getInvocationType();
+        if (type != CallType.arraylength && type != CallType.NEW) {
+            newVersion(CALLS);
+            newVersion(ARRAYS);
+        }
+    }
+
+    // Key of the value the instruction computes from its operands, null when each run computes a new value
+    private String key(Instruction rhs) {
+        if (rhs instanceof SingleOpInstruction) {
+            return loadKey((ArrayOperand) ((SingleOpInstruction) rhs).getSingleOperand());
+        }
+        if (rhs instanceof BinaryOpInstruction) {
+            BinaryOpInstruction op = (BinaryOpInstruction) rhs;
+            OperationType type = op.getOperation().getOpType();
+            int left = valueOf(op.getLeftOperand());
+            int right = valueOf(op.getRightOperand());
+            if (COMMUTATIVE.contains(type) && right < left) {
+                return type + " " + right + " " + left;
+            }
+            return type + " " + left + " " + right;
+        }
+        if (rhs instanceof UnaryOpInstruction) {
+            UnaryOpInstruction op = (UnaryOpInstruction) rhs;
+            return op.getOperation().getOpType() + " " + valueOf(op.getOperand());
+        }
+        if (rhs instanceof GetFieldInstruction) {
+            GetFieldInstruction getField = (GetFieldInstruction) rhs;
+            if (getField.getFirstOperand().getType().getTypeOfElement() == ElementType.THIS) {
+                return fieldKey(((Operand) getField.getSecondOperand()).getName());
+            }
+            return null;
+        }
+        if (rhs instanceof CallInstruction && ((CallInstruction) rhs).getInvocationType() == CallType.arraylength) {
+            // The length of an array never changes
+            return "length " + valueOf(((CallInstruction) rhs).getFirstArg());
+        }
+        return null;
+    }
+
+    private String loadKey(ArrayOperand array) {
+        return "load " + valueOf(array.getName(), null) + " " + valueOf(array.getIndexOperands().get(0)) + " "
+                + memory.getOrDefault(ARRAYS, 0);
+    }
+
+    private String fieldKey(String field) {
+        return "getfield " + field + " " + memory.getOrDefault(field, 0) + " " + memory.getOrDefault(CALLS, 0);
+    }
+
+    private int valueOf(Element element) {
+        if (element.isLiteral()) {
+            String key = "literal " + element.getType().getTypeOfElement() + " " + ((LiteralElement) element).getLiteral();
+            Integer value = expressions.get(key);
+            if (value == null) {
+                value = nextValue++;
+                set(expressions, key, value);
+            }
+            return value;
+        }
+        Operand operand = (Operand) element;
+        return valueOf(operand.getName(), element instanceof ArrayOperand ? null : operand);
+    }
+
+    // A variable read before any assignment seen on the path holds a value of its own
+    private int valueOf(String name, Operand operand) {
+        Integer value = values.get(name);
+        if (value == null) {
+            value = nextValue++;
+            set(values, name, value);
+            if (operand != null) {
+                set(holders, value, operand);
+            }
+        }
+        return value;
+    }
+
+    private Operand holder(int value) {
+        Operand holder = holders.get(value);
+        return holder != null && Integer.valueOf(value).equals(values.get(holder.getName())) ? holder : null;
+    }
+
+    private void newVersion(String name) {
+        set(memory, name, nextValue++);
+    }
+
+    private <K, V> void set(Map<K, V> map, K key, V value) {
+        V previous = map.put(key, value);
+        undo.push(() -> {
+            if (previous == null) {
+                map.remove(key);
+            } else {
+                map.put(key, previous);
+            }
+        });
+    }
+
+    // Uses
+
+    // Every variable read by the instruction is replaced by the first variable that holds the same value
+    private void replaceUses(Instruction instruction) {
+        if (instruction instanceof AssignInstruction) {
+            AssignInstruction assign = (AssignInstruction) instruction;
+            if (assign.getDest() instanceof ArrayOperand) {
+                replaceIndex((ArrayOperand) assign.getDest());
+            }
+            replaceUses(assign.getRhs());
+        } else if (instruction instanceof SingleOpInstruction) {
+            SingleOpInstruction op = (SingleOpInstruction) instruction;
+            op.setSingleOperand(replacement(op.getSingleOperand()));
+        } else if (instruction instanceof BinaryOpInstruction) {
+            BinaryOpInstruction op = (BinaryOpInstruction) instruction;
+            op.setLeftOperand(replacement(op.getLeftOperand()));
+            op.setRightOperand(replacement(op.getRightOperand()));
+        } else if (instruction instanceof UnaryOpInstruction) {
+            UnaryOpInstruction op = (UnaryOpInstruction) instruction;
+            op.setOperand(replacement(op.getOperand()));
+        } else if (instruction instanceof CallInstruction) {
+            List<Element> arguments = ((CallInstruction) instruction).getListOfOperands();
+            if (arguments != null) {
+                arguments.replaceAll(this::replacement);
+            }
+        } else if (instruction instanceof PutFieldInstruction) {
+            PutFieldInstruction putField = (PutFieldInstruction) instruction;
+            putField.setThirdOperand(replacement(putField.getThirdOperand()));
+        } else if (instruction instanceof ReturnInstruction) {
+            ReturnInstruction ret = (ReturnInstruction) instruction;
+            if (ret.hasReturnValue()) {
+                ret.setOperand(replacement(ret.getOperand()));
+            }
+        } else if (instruction instanceof CondBranchInstruction) {
+            replaceUses(((CondBranchInstruction) instruction).getCondition());
+        }
+    }
+
+    private Element replacement(Element element) {
+        if (element instanceof ArrayOperand) {
+            replaceIndex((ArrayOperand) element);
+            return element;
+        }
+        if (element.isLiteral() || !(element instanceof Operand)) {
+            return element;
+        }
+        Integer value = values.get(((Operand) element).getName());
+        Operand holder = value != null ? holder(value) : null;
+        if (holder == null || holder.getType().getTypeOfElement() != element.getType().getTypeOfElement()) {
+            return element;
+        }
+        return holder;
+    }
+
+    private void replaceIndex(ArrayOperand array) {
+        array.getIndexOperands().replaceAll(this::replacement);
+    }
+
+    // Copies
+
+    // Removes the copies to variables that are never read, as their uses now read the variable copied
+    private void removeUnusedCopies() {
+        Set<String> used = new HashSet<>();
+        for (Instruction instruction : instructions) {
+            addUses(instruction, used);
+        }
+
+        List<Instruction> kept = new ArrayList<>();
+        List<String> pendingLabels = new ArrayList<>();
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof AssignInstruction && isCopy(((AssignInstruction) instruction).getRhs())
+                    && !(((AssignInstruction) instruction).getDest() instanceof ArrayOperand)
+                    && !used.contains(((Operand) ((AssignInstruction) instruction).getDest()).getName())) {
+                pendingLabels.addAll(labels.getOrDefault(instruction, List.of()));
+                continue;
+            }
+            for (String label : pendingLabels) {
+                method.getLabels().put(label, instruction);
+            }
+            pendingLabels.clear();
+            kept.add(instruction);
+        }
+        if (kept.size() < instructions.size()) {
+            instructions.clear();
+            instructions.addAll(kept);
+        }
+    }
+
+    private static void addUses(Instruction instruction, Set<String> used) {
+        if (instruction instanceof AssignInstruction) {
+            AssignInstruction assign = (AssignInstruction) instruction;
+            if (assign.getDest() instanceof ArrayOperand) {
+                addUse(assign.getDest(), used);
+            }
+            addUses(assign.getRhs(), used);
+        } else if (instruction instanceof CallInstruction) {
+            CallInstruction call = (CallInstruction) instruction;
+            addUse(call.getFirstArg(), used);
+            if (call.getListOfOperands() != null) {
+                call.getListOfOperands().forEach(operand -> addUse(operand, used));
+            }
+        } else if (instruction instanceof PutFieldInstruction) {
+            addUse(((PutFieldInstruction) instruction).getFirstOperand(), used);
+            addUse(((PutFieldInstruction) instruction).getThirdOperand(), used);
+        } else if (instruction instanceof GetFieldInstruction) {
+            addUse(((GetFieldInstruction) instruction).getFirstOperand(), used);
+        } else if (instruction instanceof ReturnInstruction) {
+            if (((ReturnInstruction) instruction).hasReturnValue()) {
+                addUse(((ReturnInstruction) instruction).getOperand(), used);
+            }
+        } else if (instruction instanceof CondBranchInstruction) {
+            addUses(((CondBranchInstruction) instruction).getCondition(), used);
+        } else if (instruction instanceof OpInstruction) {
+            ((OpInstruction) instruction).getOperands().forEach(operand -> addUse(operand, used));
+        } else if (instruction instanceof SingleOpInstruction) {
+            addUse(((SingleOpInstruction) instruction).getSingleOperand(), used);
+        }
+    }
+
+    private static void addUse(Element element, Set<String> used) {
+        if (element == null || element.isLiteral() || !(element instanceof Operand)) {
+            return;
+        }
+        used.add(((Operand) element).getName());
+        if (element instanceof ArrayOperand) {
+            ((ArrayOperand) element).getIndexOperands().forEach(index -> addUse(index, used));
+        }
+    }
+
+    // Helpers
+
+    private void replace(int index, Instruction instruction) {
+        Instruction previous = instructions.set(index, instruction);
+        List<String> moved = labels.remove(previous);
+        if (moved != null) {
+            moved.forEach(label -> method.getLabels().put(label, instruction));
+            labels.put(instruction, moved);
+        }
+    }
+
+    // Reading a variable or a literal, reading an array element is not a copy as it may throw
+    private static boolean isCopy(Instruction rhs) {
+        return rhs instanceof SingleOpInstruction && !(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand);
+    }
+
+    private static String jumpTarget(Instruction instruction) {
+        if (instruction instanceof GotoInstruction) {
+            return ((GotoInstruction) instruction).getLabel();
+        }
+        if (instruction instanceof CondBranchInstruction) {
+            return ((CondBranchInstruction) instruction).getLabel();
+        }
+        return null;
+    }
+}
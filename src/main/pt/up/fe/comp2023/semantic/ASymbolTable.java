@@ -11,11 +11,16 @@ public class ASymbolTable implements SymbolTable {
     public List<String> imports;
     public String className;
     public String superClass;
-    public static List<Symbol> fields;
+    public List<Symbol> fields;
     public List<String> methods;
     protected Map<String, Type> typeret;
     protected Map<String, List<Symbol>> methparams;
-    protected static Map<String, List<Symbol>> methvars;
+    protected Map<String, List<Symbol>> methvars;
+    // Fields and method scopes by the ID of the names, built by buildScopes once the table is complete
+    private IdMap<Symbol> fieldIndex = new IdMap<>();
+    private final Map<String, Scope> scopes = new HashMap<>();
+    // Simple names of the imported classes, split from the import paths only once
+    private Set<String> importedClassNames = Set.of();
 
     public ASymbolTable() {
         this.imports = new ArrayList<>();
@@ -26,6 +31,64 @@ public class ASymbolTable implements SymbolTable {
         this.methvars = new HashMap<>();
     }
 
+    // Indexes the fields and imports and gives every method node its scope. The table is read only from then on,
+    // so the methods can be checked and compiled in parallel without locks
+    public void buildScopes(JmmNode root) {
+        imports = Collections.unmodifiableList(imports);
+        fields = Collections.unmodifiableList(fields);
+        methods = Collections.unmodifiableList(methods);
+        methparams.replaceAll((method, params) -> Collections.unmodifiableList(params));
+        methvars.replaceAll((method, vars) -> Collections.unmodifiableList(vars));
+        typeret = Collections.unmodifiableMap(typeret);
+        methparams = Collections.unmodifiableMap(methparams);
+        methvars = Collections.unmodifiableMap(methvars);
+
+        fieldIndex = Scope.index(fields);
+        importedClassNames = new HashSet<>();
+        for (String importedClass : imports) {
+            importedClassNames.add(simpleName(importedClass));
+        }
+        scopes.clear();
+        for (String method : methods) {
+            boolean isStatic = method.equals("main");
+            scopes.putIfAbsent(method, new Scope(method, methvars.get(method), methparams.get(method),
+                    isStatic ? null : fieldIndex));
+        }
+
+        for (JmmNode child : root.getChildren()) {
+            if (!child.getKind().equals("ClassDeclaration")) {
+                continue;
+            }
+            for (JmmNode member : child.getChildren()) {
+                if (member.getKind().equals("InstanceMethod") || member.getKind().equals("MainMethod")) {
+                    member.putObject(Scope.ATTRIBUTE, scopes.get(member.get("methodName")));
+                }
+            }
+        }
+    }
+
+    // Lookup by the ID of the name, null when the class has no such field
+    public Symbol getField(int nameId) {
+        return fieldIndex.get(nameId);
+    }
+
+    public Set<String> getImportedClassNames() {
+        return importedClassNames;
+    }
+
+    public static String simpleName(String path) {
+        return path.substring(path.lastIndexOf('.') + 1);
+    }
+
+    public Scope getScope(String methodName) {
+        return scopes.get(methodName);
+    }
+
+    // Scope of the method the node is in, or empty outside methods
+    public static Optional<Scope> getScope(JmmNode node) {
+        return getClosestMethod(node).map(method -> (Scope) method.getObject(Scope.ATTRIBUTE));
+    }
+
     @Override
     public List<String> getImports() {
         return imports;
@@ -102,57 +165,34 @@ public class ASymbolTable implements SymbolTable {
     }
 
     //Aux functions to Ollir using SymbolTable
-    public static Optional<Symbol> getClosestSymbol(JmmNode node, String name) {
-        var method = getClosestMethod(node);
-        if (method.isPresent()) {
-            String methodName;
-            if(method.get().getKind().equals("RegularMethod")){
-                methodName = method.get().getChildren().get(1).get("name");
-            }else{
-                methodName = "main";
-            }
-            for (Symbol symbol : methvars.get(methodName)) {
-                if (symbol.getName().equals(name)) {
-                    return Optional.of(symbol);
-                }
-            }
-        }
-        for (Symbol symbol : fields) {
-            if (symbol.getName().equals(name)) {
-                return Optional.of(symbol);
-            }
-        }
-        return Optional.empty();
+    public Optional<Symbol> getClosestSymbol(JmmNode node, String name) {
+        int nameId = Identifiers.id(name);
+        Symbol symbol = getScope(node).map(scope -> scope.resolve(nameId)).orElseGet(() -> getField(nameId));
+        return Optional.ofNullable(symbol);
     }
 
     public static Optional<JmmNode> getClosestMethod(JmmNode node) {
-        var method = node.getAncestor("RegularMethod");
+        if (node.getKind().equals("InstanceMethod") || node.getKind().equals("MainMethod")) {
+            return Optional.of(node);
+        }
+        var method = node.getAncestor("InstanceMethod");
         if (method.isPresent()) {
             return method;
         }
-        method = node.getAncestor("MainMethod");
-        return method;
+        return node.getAncestor("MainMethod");
     }
 
+    // Whether the name is a local variable or parameter of the method the node is in, rather than a field
     public boolean isLocalVariable(JmmNode node, String name) {
-        var closestSymbol = getClosestSymbol(node, name);
-        if (closestSymbol.isEmpty()) {
+        if (getClosestSymbol(node, name).isEmpty()) {
             return (!this.getImports().contains(name) && !name.equals("this"));
         }
 
-        var closestMethod = getClosestMethod(node);
-        if (closestMethod.isEmpty()){
-            return false;
-        }
-
-        return this.getLocalVariables(getMethodName(closestMethod.get())).stream().anyMatch(s -> s.getName().equals(name));
+        int nameId = Identifiers.id(name);
+        return getScope(node).map(scope -> scope.getVariable(nameId) != null).orElse(false);
     }
 
     public static String getMethodName(JmmNode method) {
-        if(method.getKind().equals("RegularMethod")){
-            return method.getChildren().get(1).get("name");
-        }else{
-            return "main";
-        }
+        return method.get("methodName");
     }
 }
@@ -2,30 +2,81 @@ package pt.up.fe.comp2023.semantic;
 
 import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.CompilationStats;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 
 public class AnalysisClass implements JmmAnalysis {
 
+    // Classes whose declarations have fewer children than this, mostly statements, are checked on the calling
+    // thread, where forking costs more than it saves. Set with the parallelChildren config, see
+    // SemanticAnalysisBenchmark for how the default was chosen
+    private static final int PARALLEL_CHILDREN = 200;
+
     @Override
     public JmmSemanticsResult semanticAnalysis(JmmParserResult parserResult) {
         ASymbolTable symbolTable = new ASymbolTable();
 
         Visitor visitorsymbolTable = new Visitor(symbolTable);
 
-        visitorsymbolTable.visit(parserResult.getRootNode(),null);
-
-        visitorsymbolTable.print();
-
-        SemanticVisitor semanticVisitor = new SemanticVisitor(symbolTable);
+        CompilationStats.measure("symbol table", () -> {
+            visitorsymbolTable.visit(parserResult.getRootNode(), null);
+            symbolTable.buildScopes(parserResult.getRootNode());
+            return null;
+        });
 
-        semanticVisitor.visit(parserResult.getRootNode(), "");
-        if (semanticVisitor.reports.size() > 0)
-            return new JmmSemanticsResult(parserResult, symbolTable, semanticVisitor.reports);
+        int parallelChildren = Integer.parseInt(parserResult.getConfig().getOrDefault("parallelChildren",
+                String.valueOf(PARALLEL_CHILDREN)));
+        List<Report> reports = CompilationStats.measure("semantic analysis",
+                () -> check(parserResult.getRootNode(), symbolTable, parallelChildren));
+        if (reports.size() > 0)
+            return new JmmSemanticsResult(parserResult, symbolTable, reports);
         else
             return new JmmSemanticsResult(parserResult, symbolTable, Collections.emptyList());
     }
-}
 
+    // Each method only reads the symbol table and annotates the nodes of its own subtree, so every declaration of
+    // the class is checked by its own visitor, the methods in parallel fork-join tasks. The reports are merged in
+    // source order, the same as when the whole tree is checked by one visitor
+    private static List<Report> check(JmmNode root, ASymbolTable symbolTable, int parallelChildren) {
+        List<JmmNode> declarations = new ArrayList<>();
+        for (JmmNode child : root.getChildren()) {
+            if (child.getKind().equals("ClassDeclaration")) {
+                declarations.addAll(child.getChildren());
+            } else {
+                declarations.add(child);
+            }
+        }
+
+        List<ForkJoinTask<List<Report>>> tasks = declarations.stream()
+                .map(declaration -> Identifiers.task(CompilationStats.task(() -> checkDeclaration(declaration, symbolTable))))
+                .map(check -> ForkJoinTask.adapt(check::get))
+                .collect(Collectors.toList());
 
+        int children = declarations.stream().mapToInt(JmmNode::getNumChildren).sum();
+        if (children >= parallelChildren) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            tasks.forEach(ForkJoinTask::invoke);
+        }
+
+        List<Report> reports = new ArrayList<>();
+        for (ForkJoinTask<List<Report>> task : tasks) {
+            reports.addAll(task.join());
+        }
+        return reports;
+    }
+
+    private static List<Report> checkDeclaration(JmmNode declaration, ASymbolTable symbolTable) {
+        SemanticVisitor semanticVisitor = new SemanticVisitor(symbolTable);
+        semanticVisitor.visit(declaration, "");
+        return semanticVisitor.reports;
+    }
+}
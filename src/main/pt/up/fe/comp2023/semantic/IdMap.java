@@ -0,0 +1,77 @@
+package pt.up.fe.comp2023.semantic;
+
+import java.util.Arrays;
+
+// Map from identifier IDs to values, with open addressing over plain arrays, so a lookup neither boxes the key
+// nor hashes a string. Only the first value put for an ID is kept, as in a scope the first declaration wins.
+public class IdMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IdMap() {
+        this(8);
+    }
+
+    public IdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, -1);
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        int mask = keys.length - 1;
+        for (int slot = hash(id) & mask; keys[slot] != -1; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    public void putIfAbsent(int id, V value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (keys[slot] != -1) {
+            if (keys[slot] == id) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        Arrays.fill(keys, -1);
+        values = new Object[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != -1) {
+                putIfAbsent(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    // IDs are consecutive, so they are spread over the table before being masked
+    private static int hash(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
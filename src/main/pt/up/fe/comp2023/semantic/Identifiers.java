@@ -0,0 +1,119 @@
+package pt.up.fe.comp2023.semantic;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Gives every identifier and type name a small int ID, so the phases look names up and compare them as ints
+// instead of hashing and comparing strings. The IDs live as long as one compilation: JmmCompiler runs each one in
+// its own scope, so a long-running server does not keep the names of every program it compiled. The stages called
+// outside a scope, one by one as the tests do, share one default table.
+public final class Identifiers {
+
+    // The built in types always have these IDs
+    public static final int INT = 0;
+    public static final int BOOLEAN = 1;
+    public static final int VOID = 2;
+    public static final int STRING = 3;
+
+    // Prefix of the attributes that keep the ID of the name in another attribute of a node, once it has been interned
+    private static final String ID_ATTRIBUTE = "nameId:";
+
+    private static final Identifiers DEFAULT = new Identifiers();
+    private static final ThreadLocal<Identifiers> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[256];
+    private int count;
+
+    private Identifiers() {
+        intern("int");
+        intern("boolean");
+        intern("void");
+        intern("String");
+    }
+
+    // Runs a compilation with IDs of its own, dropped when it ends
+    public static <T> T scoped(Supplier<T> compilation) {
+        Identifiers outer = CURRENT.get();
+        CURRENT.set(new Identifiers());
+        try {
+            return compilation.get();
+        } finally {
+            restore(outer);
+        }
+    }
+
+    // The scope is kept per thread, so an action the compilation hands to another thread must be wrapped with this
+    // to see the same IDs
+    public static <T> Supplier<T> task(Supplier<T> action) {
+        Identifiers scope = CURRENT.get();
+        if (scope == null) {
+            return action;
+        }
+
+        return () -> {
+            Identifiers outer = CURRENT.get();
+            CURRENT.set(scope);
+            try {
+                return action.get();
+            } finally {
+                restore(outer);
+            }
+        };
+    }
+
+    public static int id(String name) {
+        return current().intern(name);
+    }
+
+    public static String name(int id) {
+        return current().names[id];
+    }
+
+    // ID of the name kept in the given attribute of the node, interned only on the first call
+    public static int id(JmmNode node, String attribute) {
+        String idAttribute = ID_ATTRIBUTE + attribute;
+        Object id = node.getOptionalObject(idAttribute).orElse(null);
+        if (id == null) {
+            id = id(node.get(attribute));
+            node.putObject(idAttribute, id);
+        }
+        return (Integer) id;
+    }
+
+    private static Identifiers current() {
+        Identifiers scope = CURRENT.get();
+        return scope != null ? scope : DEFAULT;
+    }
+
+    private static void restore(Identifiers outer) {
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+
+    private int intern(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+        }
+        // The name is stored before the ID is published, so name(id) always finds it
+        names[count] = name;
+        ids.put(name, count);
+        return count++;
+    }
+}
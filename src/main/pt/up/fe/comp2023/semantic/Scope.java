@@ -0,0 +1,65 @@
+package pt.up.fe.comp2023.semantic;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+
+import java.util.List;
+
+// Names visible inside a method, indexed by the ID of the name. Locals hide parameters, which hide fields, and a
+// static method sees no fields. Each method node keeps its scope, so resolving an identifier takes a few array
+// lookups whatever the size of the method or the number of fields.
+public class Scope {
+
+    // Attribute of the method nodes that keeps their scope
+    public static final String ATTRIBUTE = "scope";
+
+    private final String methodName;
+    private final IdMap<Symbol> locals;
+    private final IdMap<Symbol> params;
+    private final IdMap<Symbol> fields;
+
+    Scope(String methodName, List<Symbol> locals, List<Symbol> params, IdMap<Symbol> fields) {
+        this.methodName = methodName;
+        this.locals = index(locals);
+        this.params = index(params);
+        this.fields = fields;
+    }
+
+    static IdMap<Symbol> index(List<Symbol> symbols) {
+        IdMap<Symbol> index = new IdMap<>(symbols.size());
+        for (Symbol symbol : symbols) {
+            index.putIfAbsent(Identifiers.id(symbol.getName()), symbol);
+        }
+        return index;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public boolean isStatic() {
+        return fields == null;
+    }
+
+    // Lookups by the ID of the name, null when the name is not in that part of the scope
+    public Symbol getLocal(int nameId) {
+        return locals.get(nameId);
+    }
+
+    public Symbol getParameter(int nameId) {
+        return params.get(nameId);
+    }
+
+    public Symbol getVariable(int nameId) {
+        Symbol symbol = locals.get(nameId);
+        return symbol != null ? symbol : params.get(nameId);
+    }
+
+    public Symbol getField(int nameId) {
+        return fields != null ? fields.get(nameId) : null;
+    }
+
+    public Symbol resolve(int nameId) {
+        Symbol symbol = getVariable(nameId);
+        return symbol != null ? symbol : getField(nameId);
+    }
+}
@@ -10,14 +10,24 @@ import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
 import java.util.*;
 
+import static pt.up.fe.comp2023.semantic.Types.*;
+
 public class SemanticVisitor extends AJmmVisitor<String, Void>{
 
     ASymbolTable symbolTable;
     List<Report> reports;
+    // Scope of the method being visited, null outside methods
+    private Scope scope;
+    private final Type classType;
+    private final Type superType;
+    private final String superName;
 
     SemanticVisitor(ASymbolTable symbolTable){
         this.symbolTable = symbolTable;
         this.reports = new ArrayList<>();
+        this.classType = Types.of(symbolTable.getClassName(), false);
+        this.superType = Types.of(symbolTable.getSuper() != null ? symbolTable.getSuper() : "Object", false);
+        this.superName = symbolTable.getSuper() != null ? ASymbolTable.simpleName(symbolTable.getSuper()) : null;
     }
 
     @Override
@@ -31,9 +41,9 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
         addVisit("ArrayAssignment", this::visitArrayAssignment);
         addVisit("ArrayExpr", this::visitArrayExpr);
         addVisit("ArrayInit", this::visitArrayInit);
-        addVisit("BinaryOp", this::visitBinaryOp);
-        addVisit("UnaryOp", this::visitUnaryOp);
-        addVisit("PrioExpr", this::visitPrioExpr);
+        addVisit("BinaryOp", this::visitOperator);
+        addVisit("UnaryOp", this::visitOperator);
+        addVisit("PrioExpr", this::visitOperator);
         addVisit("Constructor", this::visitConstructor);
         addVisit("Length", this::visitLength);
         addVisit("Integer", this::visitLiteral);
@@ -45,12 +55,15 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
 
     //Functions for all visitors
     private Void visitMethod(JmmNode jmmNode, String reach) {
+        scope = (Scope) jmmNode.getObject(Scope.ATTRIBUTE);
         visitAllChildren(jmmNode, jmmNode.get("methodName"));
+        scope = null;
         if(!jmmNode.get("methodName").equals("main")) {
-            JmmNode returnExpr = jmmNode.getJmmChild(jmmNode.getNumChildren() - 1);
+            Type returnType = symbolTable.getReturnType(jmmNode.get("methodName"));
+            Type exprType = typeOf(jmmNode.getJmmChild(jmmNode.getNumChildren() - 1));
 
-            if (!(symbolTable.getReturnType(jmmNode.get("methodName")).getName().equals(returnExpr.get("type")) || returnExpr.get("type").equals("inferred"))) {
-                String msg = "Incompatible return type. Expected '" + symbolTable.getReturnType(jmmNode.get("methodName")).getName() + "', instead got '" + returnExpr.get("type") + "'.";
+            if (!(sameName(returnType, exprType) || exprType == INFERRED)) {
+                String msg = "Incompatible return type. Expected '" + returnType.getName() + "', instead got '" + exprType.getName() + "'.";
                 reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
             }
         }
@@ -61,26 +74,26 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
         JmmNode obj = jmmNode.getJmmChild(0);
         visit(obj, reach);
 
+        // Also visits the arguments, which must not be visited again below, or nested calls take exponential time
         JmmNode method = jmmNode.getJmmChild(1);
         visit(method, reach);
 
         if(obj.getKind().equals("Reference") && method.get("methodName").equals("main")) {
             String msg = "Static method '" + method.get("methodName") + "' cannot be invoked by an instance.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
+            setType(jmmNode, NULL);
             return null;
         }
 
         if(!symbolTable.getMethods().contains(method.get("methodName"))) {
-            List<String> importedClasses = getImportedClassNames();
-            if (!importedClasses.contains(obj.get("type")) && symbolTable.getSuper() == null) {
+            if (!symbolTable.getImportedClassNames().contains(typeOf(obj).getName()) && symbolTable.getSuper() == null) {
                 String msg = "Method '" + method.get("methodName") + "' does not exist.";
                 reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                jmmNode.put("type", "null");
+                setType(jmmNode, NULL);
                 return null;
             }
 
-            jmmNode.put("type", "inferred");
+            setType(jmmNode, INFERRED);
             return null;
         }
 
@@ -89,36 +102,29 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
                     "'. Expected " + symbolTable.getParameters(method.get("methodName")).size() +
                     ", instead got " + method.getNumChildren() + ".";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
+            setType(jmmNode, NULL);
             return null;
         }
 
-        String superClass = symbolTable.getSuper() != null ? symbolTable.getSuper() : "Object";
         for(int i = 0; i < method.getNumChildren(); i++) {
-            JmmNode arg = method.getJmmChild(i);
+            Type argType = typeOf(method.getJmmChild(i));
             Type paramType = symbolTable.getParameters(method.get("methodName")).get(i).getType();
 
-            visit(arg, reach);
-
-            if(arg.get("type").equals("inferred"))
+            if(argType == INFERRED)
                 continue;
 
-            if(arg.get("type").equals(symbolTable.getClassName()) && paramType.getName().equals(superClass))
+            if(sameName(argType, classType) && sameName(paramType, superType))
                 continue;
 
-            if(arg.get("type").equals(paramType.getName())) {
-                if(!paramType.isArray() && (!arg.hasAttribute("isArray") || !Boolean.parseBoolean(arg.get("isArray"))))
-                    continue;
-                else if (paramType.isArray() && arg.hasAttribute("isArray") && Boolean.parseBoolean(arg.get("isArray")))
-                    continue;
-            }
+            if(sameName(argType, paramType) && argType.isArray() == paramType.isArray())
+                continue;
 
-            String msg = "Incompatible argument " + i+1 + " for method '" + method.get("methodName") + "'. Expected '" + paramType + "', instead got '" + arg.get("type") + "'.";
+            String msg = "Incompatible argument " + i+1 + " for method '" + method.get("methodName") + "'. Expected '" + paramType + "', instead got '" + argType.getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
             break;
         }
 
-        jmmNode.put("type", symbolTable.getReturnType(method.get("methodName")).getName());
+        setType(jmmNode, element(symbolTable.getReturnType(method.get("methodName"))));
         return null;
     }
 
@@ -126,8 +132,8 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
         JmmNode condition = jmmNode.getJmmChild(0);
         visit(condition, reach);
 
-        if(!(condition.get("type").equals("boolean") || condition.get("type").equals("inferred"))) {
-            String msg = (jmmNode.getKind().equals("WhileLoop") ? "'while'" : "'if'") + " condition must be of 'boolean' type, instead got '" + condition.get("type") + "'.";
+        if(!(hasTypeName(condition, BOOLEAN) || typeOf(condition) == INFERRED)) {
+            String msg = (jmmNode.getKind().equals("WhileLoop") ? "'while'" : "'if'") + " condition must be of 'boolean' type, instead got '" + typeOf(condition).getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
             return null;
         }
@@ -138,7 +144,7 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
     }
 
     private Void visitAssignment(JmmNode jmmNode, String reach) {
-        Symbol symbol = symbolSearch(jmmNode.get("var"), reach);
+        Symbol symbol = symbolSearch(Identifiers.id(jmmNode, "var"));
         if (symbol == null) {
             String msg = "Invalid assignment, identifier '" + jmmNode.get("var") + "' doesn't exist or is out of reach.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
@@ -147,64 +153,68 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
 
         JmmNode expr = jmmNode.getJmmChild(0);
         visit(expr, reach);
-
-        if (doesClassExist(symbol.getType().getName()) || doesClassExist(expr.get("type"))) {
-            String superClass = symbolTable.getSuper() != null ? symbolTable.getSuper() : "Object";
-            if (!expr.get("type").equals(symbol.getType().getName())) {
-                if (!(symbol.getType().getName().equals(superClass) && expr.get("type").equals(symbolTable.getClassName()))) {
-                    List<String> importedClasses = getImportedClassNames();
-                    if (!(importedClasses.contains(symbol.getType().getName()) && importedClasses.contains(expr.get("type")))) {
-                        String msg = "Invalid assignment, class '" + symbol.getType().getName() + "' isn't compatible with class '" + expr.get("type") + "'.";
+        Type varType = symbol.getType();
+        Type exprType = typeOf(expr);
+
+        if (doesClassExist(varType.getName()) || doesClassExist(exprType.getName())) {
+            if (!sameName(exprType, varType)) {
+                if (!(sameName(varType, superType) && sameName(exprType, classType))) {
+                    if (!areImported(varType, exprType)) {
+                        String msg = "Invalid assignment, class '" + varType.getName() + "' isn't compatible with class '" + exprType.getName() + "'.";
                         reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
                     }
                 }
             }
         } else {
-            if (!(expr.get("type").equals(symbol.getType().getName()) || expr.get("type").equals("inferred"))) {
-                String msg = "Invalid assignment, expression type doesn't match variable '" + symbol.getName() + "' type. Expected '" + symbol.getType().getName() + "', instead got '" + expr.get("type") + "'.";
+            if (!(sameName(exprType, varType) || exprType == INFERRED)) {
+                String msg = "Invalid assignment, expression type doesn't match variable '" + symbol.getName() + "' type. Expected '" + varType.getName() + "', instead got '" + exprType.getName() + "'.";
                 reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
             }
 
-            if (expr.getKind().equals("Identifier") && !String.valueOf(symbol.getType().isArray()).equals(expr.get("isArray"))) {
+            if (expr.getKind().equals("Identifier") && !sameArrayness(varType, exprType)) {
                 String msg = "Invalid assignment, assigning array to non-array variable";
                 reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
             }
         }
 
-        if (!areTypesCompatible(symbol.getType(), expr.get("type"))) {
-            String msg = "Invalid assignment, incompatible types. Cannot assign '" + expr.get("type") + "' to '" + symbol.getType().getName() + "'.";
+        if (!areTypesCompatible(varType, exprType)) {
+            String msg = "Invalid assignment, incompatible types. Cannot assign '" + exprType.getName() + "' to '" + varType.getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
         }
 
-        jmmNode.put("type", symbol.getType().getName());
+        setType(jmmNode, element(varType));
         return null;
     }
 
-    private boolean areTypesCompatible(Type type1, String type2) {
-        if (type1.getName().equals(type2)) {
+    private boolean areTypesCompatible(Type type1, Type type2) {
+        if (sameName(type1, type2)) {
             return true;
         }
 
-        String superClass = symbolTable.getSuper() != null ? symbolTable.getSuper() : "Object";
-        if (type1.getName().equals(superClass) && type2.equals(symbolTable.getClassName())) {
+        if (sameName(type1, superType) && sameName(type2, classType)) {
             return true;
         }
 
-        List<String> importedClasses = getImportedClassNames();
-        if (importedClasses.contains(type1.getName()) && importedClasses.contains(type2)) {
-            return true;
-        }
+        return areImported(type1, type2);
+    }
 
-        return false;
+    private boolean areImported(Type type1, Type type2) {
+        Set<String> importedClasses = symbolTable.getImportedClassNames();
+        return importedClasses.contains(type1.getName()) && importedClasses.contains(type2.getName());
+    }
+
+    // An identifier with errors is taken as neither an array nor a non-array
+    private static boolean sameArrayness(Type variable, Type identifier) {
+        return identifier != NULL && variable.isArray() == identifier.isArray();
     }
 
 
     private Void visitArrayAssignment(JmmNode jmmNode, String reach) {
-        Symbol symbol = symbolSearch(jmmNode.get("var"), reach);
+        Symbol symbol = symbolSearch(Identifiers.id(jmmNode, "var"));
         if(symbol == null) {
             String msg = "Invalid assignment, identifier '" + jmmNode.get("var") + "' doesn't exist or is out of reach.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
+            setType(jmmNode, NULL);
             return null;
         }
 
@@ -215,24 +225,24 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
 
         JmmNode index = jmmNode.getJmmChild(0);
         visit(index, reach);
-        if(!index.get("type").equals("int")) {
-            String msg = "Invalid assignment. Index must be an 'int', instead got '" + index.get("type") + "'.";
+        if(!hasTypeName(index, INT)) {
+            String msg = "Invalid assignment. Index must be an 'int', instead got '" + typeOf(index).getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
         }
 
         JmmNode expr = jmmNode.getJmmChild(1);
         visit(expr, reach);
-        if(!expr.get("type").equals(symbol.getType().getName())) {
-            String msg = "Invalid assignment, expression type doesn't match variable '" + symbol.getName() + "' type. Expected '" + symbol.getType().getName() + "', instead got '" + expr.get("type") + "'.";
+        if(!sameName(typeOf(expr), symbol.getType())) {
+            String msg = "Invalid assignment, expression type doesn't match variable '" + symbol.getName() + "' type. Expected '" + symbol.getType().getName() + "', instead got '" + typeOf(expr).getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
         }
 
-        if(expr.getKind().equals("Identifier") && !String.valueOf(symbol.getType().isArray()).equals(expr.get("isArray"))) {
+        if(expr.getKind().equals("Identifier") && !sameArrayness(symbol.getType(), typeOf(expr))) {
             String msg = "Invalid assignment, assigning array to non-array variable";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
         }
 
-        jmmNode.put("type", symbol.getType().getName());
+        setType(jmmNode, element(symbol.getType()));
         return null;
     }
 
@@ -241,22 +251,22 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
         JmmNode index = jmmNode.getJmmChild(1);
 
         visit(id, reach);
-        if(id.getKind().equals("Identifier") && !id.get("isArray").equals("true")) {
+        if(id.getKind().equals("Identifier") && !typeOf(id).isArray()) {
             String msg = "Invalid array access, variable '" + id.get("value") + "' is not an array.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
+            setType(jmmNode, NULL);
             return null;
         }
 
         visit(index, reach);
-        if(!(index.get("type").equals("int") || index.get("type").equals("inferred"))) {
-            String msg = "Invalid index. Index must be an 'int', instead got '" + index.get("type") + "'.";
+        if(!(hasTypeName(index, INT) || typeOf(index) == INFERRED)) {
+            String msg = "Invalid index. Index must be an 'int', instead got '" + typeOf(index).getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
+            setType(jmmNode, NULL);
             return null;
         }
 
-        jmmNode.put("type", id.get("type"));
+        setType(jmmNode, element(typeOf(id)));
         return null;
     }
 
@@ -264,97 +274,81 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
         JmmNode size = jmmNode.getJmmChild(0);
         visit(size, reach);
 
-        if(!(size.get("type").equals("int") || size.get("type").equals("inferred"))) {
-            String msg = "Invalid array initialization. Array size must be of type 'int', instead got '" + size.get("type") + "'.";
+        if(!(hasTypeName(size, INT) || typeOf(size) == INFERRED)) {
+            String msg = "Invalid array initialization. Array size must be of type 'int', instead got '" + typeOf(size).getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
-            jmmNode.put("isArray", "null");
+            setType(jmmNode, NULL);
             return null;
         }
 
-        jmmNode.put("type", "int");
-        jmmNode.put("isArray", "true");
+        setType(jmmNode, INT_ARRAY);
         return null;
     }
 
-    private Void visitBinaryOp(JmmNode jmmNode, String reach) {
-        switch (jmmNode.get("op")) {
-            case "+", "-", "*", "/" -> {
-                for (JmmNode child : jmmNode.getChildren()) {
-                    visit(child, reach);
-                    if (!(child.get("type").equals("int") || child.get("type").equals("inferred"))) {
-                        String msg = "Invalid operand type in '" + jmmNode.get("op") + "' operation. Expected 'int', instead got '" + child.get("type") + "'.";
-                        reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                        jmmNode.put("type", "null");
-                        return null;
-                    }
-                    if (child.getKind().equals("Identifier") && child.get("isArray").equals("true")) {
-                        String msg = "'" + jmmNode.get("op") + "' operation doesn't support arrays.";
-                        reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                        jmmNode.put("type", "null");
-                        return null;
-                    }
-                }
-                jmmNode.put("type", "int");
+    // Operators are visited with an explicit stack instead of recursion, so long chains such as a + b + c + ...
+    // and deeply nested parentheses do not overflow the stack. Every operator is checked after its operands,
+    // and any other operand is visited as usual
+    private Void visitOperator(JmmNode jmmNode, String reach) {
+        Deque<JmmNode> pending = new ArrayDeque<>();
+        Deque<JmmNode> postOrder = new ArrayDeque<>();
+        pending.push(jmmNode);
+        while (!pending.isEmpty()) {
+            JmmNode node = pending.pop();
+            postOrder.push(node);
+            if (isOperator(node)) {
+                node.getChildren().forEach(pending::push);
             }
-            case ">", "<" -> {
-                for (JmmNode child : jmmNode.getChildren()) {
-                    visit(child, reach);
-                    if (!(child.get("type").equals("int") || child.get("type").equals("inferred"))) {
-                        String msg = "Invalid operand type in '" + jmmNode.get("op") + "' operation. Expected 'int', instead got '" + child.get("type") + "'.";
-                        reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                        jmmNode.put("type", "null");
-                        return null;
-                    }
-                    if (child.getKind().equals("Identifier") && child.get("isArray").equals("true")) {
-                        String msg = "'" + jmmNode.get("op") + "' operation doesn't support arrays.";
-                        reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                        jmmNode.put("type", "null");
-                        return null;
-                    }
-                }
-                jmmNode.put("type", "boolean");
-            }
-            case "&&", "||" -> {
-                for (JmmNode child : jmmNode.getChildren()) {
-                    visit(child, reach);
-                    if (!(child.get("type").equals("boolean") || child.get("type").equals("inferred"))) {
-                        String msg = "Invalid operand type in '" + jmmNode.get("op") + "' operation. Expected 'boolean', instead got '" + child.get("type") + "'.";
-                        reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                        jmmNode.put("type", "null");
-                        return null;
-                    }
-                    if (child.getKind().equals("Identifier") && child.get("isArray").equals("true")) {
-                        String msg = "'" + jmmNode.get("op") + "' operation doesn't support arrays.";
-                        reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                        jmmNode.put("type", "null");
-                        return null;
-                    }
-                }
-                jmmNode.put("type", "boolean");
+        }
+
+        while (!postOrder.isEmpty()) {
+            JmmNode node = postOrder.pop();
+            switch (node.getKind()) {
+                case "BinaryOp" -> checkBinaryOp(node);
+                case "UnaryOp" -> checkUnaryOp(node);
+                case "PrioExpr" -> setType(node, element(typeOf(node.getJmmChild(0))));
+                default -> visit(node, reach);
             }
         }
         return null;
     }
 
-    private Void visitUnaryOp(JmmNode jmmNode, String reach) {
+    private static boolean isOperator(JmmNode jmmNode) {
+        String kind = jmmNode.getKind();
+        return kind.equals("BinaryOp") || kind.equals("UnaryOp") || kind.equals("PrioExpr");
+    }
+
+    private void checkBinaryOp(JmmNode jmmNode) {
+        String op = jmmNode.get("op");
+        Type operandType = op.equals("&&") || op.equals("||") ? BOOLEAN : INT;
+        Type resultType = op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/") ? INT : BOOLEAN;
+
+        for (JmmNode child : jmmNode.getChildren()) {
+            if (!(hasTypeName(child, operandType) || typeOf(child) == INFERRED)) {
+                String msg = "Invalid operand type in '" + op + "' operation. Expected '" + operandType.getName() + "', instead got '" + typeOf(child).getName() + "'.";
+                reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
+                setType(jmmNode, NULL);
+                return;
+            }
+            if (child.getKind().equals("Identifier") && typeOf(child).isArray()) {
+                String msg = "'" + op + "' operation doesn't support arrays.";
+                reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
+                setType(jmmNode, NULL);
+                return;
+            }
+        }
+        setType(jmmNode, resultType);
+    }
+
+    private void checkUnaryOp(JmmNode jmmNode) {
         JmmNode operand = jmmNode.getJmmChild(0);
-        visit(operand, reach);
-        if (!(operand.get("type").equals("boolean") || operand.get("type").equals("inferred"))) {
-            String msg = "Invalid operand type in '" + jmmNode.get("op") + "' operation. Expected 'boolean', instead got '" + operand.get("type") + "'.";
+        if (!(hasTypeName(operand, BOOLEAN) || typeOf(operand) == INFERRED)) {
+            String msg = "Invalid operand type in '" + jmmNode.get("op") + "' operation. Expected 'boolean', instead got '" + typeOf(operand).getName() + "'.";
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-            jmmNode.put("type", "null");
-            return null;
+            setType(jmmNode, NULL);
+            return;
         }
 
-        jmmNode.put("type", "boolean");
-        return null;
-    }
-
-    private Void visitPrioExpr(JmmNode jmmNode, String reach) {
-        visitAllChildren(jmmNode, reach);
-        jmmNode.put("type", jmmNode.getJmmChild(0).get("type"));
-        return null;
+        setType(jmmNode, BOOLEAN);
     }
 
     private Void visitConstructor(JmmNode jmmNode, String reach) {
@@ -365,7 +359,7 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
         }
 
-        jmmNode.put("type", className);
+        setType(jmmNode, Types.of(className, false));
         return null;
     }
 
@@ -373,41 +367,39 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
         JmmNode expr = jmmNode.getJmmChild(0);
         visit(expr, reach);
 
-        if(!(expr.hasAttribute("isArray") && expr.get("isArray").equals("true")))
+        if(!typeOf(expr).isArray())
             reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1,"Cannot get length of an non-array expression."));
 
-        jmmNode.put("type", "int");
+        setType(jmmNode, INT);
         return null;
     }
 
     private Void visitLiteral(JmmNode jmmNode, String reach) {
         switch (jmmNode.getKind()) {
             case "Integer" -> {
-                jmmNode.put("type", "int");
+                setType(jmmNode, INT);
             }
             case "BoolExpr" -> {
-                jmmNode.put("type", "boolean");
+                setType(jmmNode, BOOLEAN);
             }
             case "Reference" -> {
                 if(reach.equals("main")) {
                     reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, "Cannot use 'this' in a static method."));
-                    jmmNode.put("type", "null");
+                    setType(jmmNode, NULL);
                     return null;
                 }
-                jmmNode.put("type", symbolTable.getClassName());
+                setType(jmmNode, classType);
             }
             case "Identifier" -> {
-                Symbol symbol = symbolSearch(jmmNode.get("value"), reach);
+                Symbol symbol = symbolSearch(Identifiers.id(jmmNode, "value"));
                 String className = doesClassExist(jmmNode.get("value")) ? jmmNode.get("value") : null;
                 if (symbol == null && className == null) {
                     String msg = "Identifier '" + jmmNode.get("value") + "' does not correspond to any symbol or class.";
                     reports.add(new Report(ReportType.ERROR, Stage.SEMANTIC, -1, msg));
-                    jmmNode.put("type", "null");
-                    jmmNode.put("isArray", "null");
+                    setType(jmmNode, NULL);
                     return null;
                 }
-                jmmNode.put("type", (symbol != null) ? symbol.getType().getName() : className);
-                jmmNode.put("isArray", (symbol != null) ? String.valueOf(symbol.getType().isArray()) : "false");
+                setType(jmmNode, (symbol != null) ? symbol.getType() : Types.of(className, false));
             }
         }
         return null;
@@ -419,54 +411,17 @@ public class SemanticVisitor extends AJmmVisitor<String, Void>{
     }
 
     //Aux Functions for Visitors
-    private Symbol symbolSearch(String var_name, String reach) {
-        if (!reach.equals("")) {
-            for (Symbol symbol : symbolTable.getLocalVariables(reach)) {
-                if (symbol.getName().equals(var_name))
-                    return symbol;
-            }
-
-            for (Symbol symbol : symbolTable.getParameters(reach)) {
-                if (symbol.getName().equals(var_name))
-                    return symbol;
-            }
-        }
-
-        if (reach.equals("main"))
-            return null;
-
-        for (Symbol symbol : symbolTable.getFields()) {
-            if (symbol.getName().equals(var_name))
-                return symbol;
-        }
-
-        return null;
+    private Symbol symbolSearch(int nameId) {
+        return scope != null ? scope.resolve(nameId) : symbolTable.getField(nameId);
     }
 
     private boolean doesClassExist(String className) {
-        if(className.equals(symbolTable.getClassName()))
-            return true;
-
-        if(symbolTable.getSuper() != null) {
-            String[] splits = symbolTable.getSuper().split("[.]");
-            if (splits[splits.length - 1].equals(className))
-                return true;
-        }
-
-        for(String importedClass : symbolTable.getImports()) {
-            String[] splits = importedClass.split("[.]");
-            if (splits[splits.length-1].equals(className))
-                return true;
-        }
-        return false;
+        return className.equals(symbolTable.getClassName()) || className.equals(superName)
+                || symbolTable.getImportedClassNames().contains(className);
     }
 
-    private List<String> getImportedClassNames() {
-        List<String> importedClasses = new ArrayList<>();
-        for (String importedClass : symbolTable.getImports()) {
-            String[] splits = importedClass.split("[.]");
-            importedClasses.add(splits[splits.length - 1]);
-        }
-        return importedClasses;
+    // Whether the type of the node has the given name, array or not
+    private static boolean hasTypeName(JmmNode jmmNode, Type type) {
+        return element(typeOf(jmmNode)) == type;
     }
 }
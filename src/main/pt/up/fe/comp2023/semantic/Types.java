@@ -0,0 +1,74 @@
+package pt.up.fe.comp2023.semantic;
+
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One Type instance per distinct type, so the semantic checks compare types by reference. The types of the
+// expressions are kept on the nodes as Type objects, and every array type knows the type of its elements.
+// Like the identifiers, the types are shared by all the compilations in the JVM.
+public final class Types {
+
+    // Attribute of the expression nodes that keeps their type
+    private static final String ATTRIBUTE = "semanticType";
+
+    private static final ConcurrentHashMap<String, Canonical> types = new ConcurrentHashMap<>();
+
+    public static final Type INT = of("int", false);
+    public static final Type INT_ARRAY = of("int", true);
+    public static final Type BOOLEAN = of("boolean", false);
+    public static final Type VOID = of("void", false);
+    // Type of the calls to methods of other classes, which is not known
+    public static final Type INFERRED = of("inferred", false);
+    // Type of the expressions with errors
+    public static final Type NULL = of("null", false);
+
+    private Types() {
+    }
+
+    public static Type of(String name, boolean isArray) {
+        Canonical type = types.computeIfAbsent(name, Canonical::new);
+        return isArray ? type.array : type;
+    }
+
+    // Same type without the array, the type that is compared when only the names of two types must match
+    public static Type element(Type type) {
+        return type instanceof Canonical ? ((Canonical) type).element : of(type.getName(), false);
+    }
+
+    public static boolean sameName(Type type1, Type type2) {
+        return element(type1) == element(type2);
+    }
+
+    public static Type typeOf(JmmNode node) {
+        return (Type) node.getObject(ATTRIBUTE);
+    }
+
+    public static Optional<Type> optionalTypeOf(JmmNode node) {
+        return node.getOptionalObject(ATTRIBUTE).map(Type.class::cast);
+    }
+
+    public static void setType(JmmNode node, Type type) {
+        node.putObject(ATTRIBUTE, type);
+    }
+
+    private static class Canonical extends Type {
+
+        private final Canonical element;
+        private final Canonical array;
+
+        Canonical(String name) {
+            super(name, false);
+            this.element = this;
+            this.array = new Canonical(name, this);
+        }
+
+        private Canonical(String name, Canonical element) {
+            super(name, true);
+            this.element = element;
+            this.array = this;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package pt.up.fe.comp2023.semantic;
 
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
-import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import java.util.ArrayList;
@@ -53,10 +52,10 @@ public class Visitor extends AJmmVisitor<Void, Void> {
 
         switch (jmmNode.getJmmParent().getKind()) {
             case "ClassDeclaration" ->
-                    symbolTable.getFields().add(new Symbol(new Type(typesymb, isArray), namesymb));
+                    symbolTable.getFields().add(new Symbol(Types.of(typesymb, isArray), namesymb));
             case "InstanceMethod", "MainMethod" -> {
                 var methodName = jmmNode.getJmmParent().get("methodName");
-                symbolTable.getLocalVariables(methodName).add(new Symbol(new Type(typesymb, isArray), namesymb));
+                symbolTable.getLocalVariables(methodName).add(new Symbol(Types.of(typesymb, isArray), namesymb));
             }
         }
         return null;
@@ -64,9 +63,9 @@ public class Visitor extends AJmmVisitor<Void, Void> {
 
     private Void visitMainMethod(JmmNode jmmNode, Void unused) {
         symbolTable.getMethods().add("main");
-        symbolTable.typeret.put("main", new Type("void", false));
+        symbolTable.typeret.put("main", Types.VOID);
         symbolTable.methparams.put("main", new ArrayList<>());
-        symbolTable.methparams.get("main").add(new Symbol(new Type("String", true), "args"));
+        symbolTable.methparams.get("main").add(new Symbol(Types.of("String", true), "args"));
         symbolTable.methvars.putIfAbsent("main", new ArrayList<>());
 
         visitAllChildren(jmmNode, unused);
@@ -79,7 +78,7 @@ public class Visitor extends AJmmVisitor<Void, Void> {
 
         var returnType = jmmNode.getJmmChild(0).getJmmChild(0).get("value");
         var returnTypeIsArray = jmmNode.getJmmChild(0).getJmmChild(0).getKind().equals("Array");
-        symbolTable.typeret.put(methodName, new Type(returnType, returnTypeIsArray));
+        symbolTable.typeret.put(methodName, Types.of(returnType, returnTypeIsArray));
 
         symbolTable.methparams.put(methodName, new ArrayList<>());
         for(int i = 1; i < jmmNode.getNumChildren(); i++) {
@@ -89,7 +88,7 @@ public class Visitor extends AJmmVisitor<Void, Void> {
             var paramName = methodParam.get("name");
             var paramType = methodParam.getJmmChild(0).get("value");
             var paramTypeIsArray = methodParam.getJmmChild(0).getKind().equals("Array");
-            symbolTable.methparams.get(methodName).add(new Symbol(new Type(paramType, paramTypeIsArray), paramName));
+            symbolTable.methparams.get(methodName).add(new Symbol(Types.of(paramType, paramTypeIsArray), paramName));
         }
         symbolTable.methvars.putIfAbsent(methodName, new ArrayList<>());
 
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2022 SPeCS.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.jasmin.ClassFileResult;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
+import pt.up.fe.specs.util.SpecsSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+// Runs the classes written by the class file backend, with the programs and outputs of the Jasmin tests
+public class ClassFileTest {
+
+    static ClassFileResult getClassFileResult(String filename) {
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/" + filename),
+                Collections.emptyMap());
+        return new ClassFileGenerator().toClassFile(ollirResult.getOllirClass());
+    }
+
+    // Writes the class to a new directory and runs it with the libraries of the tests, the JVM verifies it on loading
+    static String run(ClassFileResult result) {
+        try {
+            Path directory = Files.createTempDirectory("jmm-classfile");
+            result.write(directory);
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            String classpath = directory + File.pathSeparator + TestUtils.getLibsClasspath();
+            var output = SpecsSystem.runProcess(List.of(java, "-cp", classpath, result.getClassName()), true, false);
+            assertEquals("Error while running the class file: " + output.getStdErr(), 0, output.getReturnValue());
+
+            return SpecsStrings.normalizeFileContents(output.getStdOut(), true);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the class file", e);
+        }
+    }
+
+    @Test
+    public void arithmeticAnd() {
+        assertEquals("0", run(getClassFileResult("arithmetic/Arithmetic_and.ollir")));
+    }
+
+    @Test
+    public void arithmeticLess() {
+        assertEquals("1", run(getClassFileResult("arithmetic/Arithmetic_less.ollir")));
+    }
+
+    @Test
+    public void ifElse() {
+        assertEquals("Result: 5\nResult: 8", run(getClassFileResult("control_flow/SimpleIfElseStat.ollir")));
+    }
+
+    @Test
+    public void invertedCondition() {
+        assertEquals("Result: 3", run(getClassFileResult("control_flow/SimpleControlFlow.ollir")));
+    }
+
+    @Test
+    public void ifElseNot() {
+        assertEquals("10\n200", run(getClassFileResult("control_flow/SimpleIfElseNot.ollir")));
+    }
+
+    @Test
+    public void whileLoop() {
+        assertEquals("Result: 0\nResult: 1\nResult: 2", run(getClassFileResult("control_flow/SimpleWhileStat.ollir")));
+    }
+
+    @Test
+    public void switchLikeIfs() {
+        assertEquals("Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5\nResult: 6\nResult: 7",
+                run(getClassFileResult("control_flow/SwitchStat.ollir")));
+    }
+
+    @Test
+    public void nestedIfWhile() {
+        assertEquals("Result: 1\nResult: 2\nResult: 1", run(getClassFileResult("control_flow/IfWhileNested.ollir")));
+    }
+
+    @Test
+    public void conditionArguments() {
+        assertEquals("Result: 10", run(getClassFileResult("calls/ConditionArgsFuncCall.ollir")));
+    }
+
+    @Test
+    public void arrayInit() {
+        assertEquals("Result: 5", run(getClassFileResult("arrays/ArrayInit.ollir")));
+    }
+
+    @Test
+    public void arrayAccess() {
+        assertEquals("Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5",
+                run(getClassFileResult("arrays/ArrayAccess.ollir")));
+    }
+
+    @Test
+    public void complexArrayAccess() {
+        assertEquals("Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5",
+                run(getClassFileResult("arrays/ComplexArrayAccess.ollir")));
+    }
+
+    @Test
+    public void arrayAsArgument() {
+        assertEquals("Result: 2", run(getClassFileResult("arrays/ArrayAsArg.ollir")));
+    }
+
+    /**
+     * The registers shared by the register allocation are kept in the class file
+     */
+    @Test
+    public void sharedRegisters() {
+        Map<String, String> config = new HashMap<>();
+        config.put("registerAllocation", "0");
+        var ollirResult = TestUtils.optimize(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/reg_alloc/RegAllocIinc.jmm"), config);
+
+        var result = new ClassFileGenerator().toClassFile(ollirResult.getOllirClass());
+
+        assertEquals("-53\n1\n0\n-2", run(result));
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2022 SPeCS.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RegisterAllocationTest {
+
+    // Compiles as the launcher does, with the registers allocated on the OLLIR the compiler built
+    static JasminResult compileReg(String filename, int numReg) {
+        Map<String, String> config = new HashMap<>();
+        config.put("registerAllocation", String.valueOf(numReg));
+        var result = new JmmCompiler().compile(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+        assertFalse(result.reports().toString(), result.hasErrors());
+        return result.jasminResult();
+    }
+
+    /**
+     * Program from the ProgramGenerator (seed 2, one method of 6 statements) where, with -r=0, a temporary shares its
+     * register with the variable of an increment. The iinc shortcut must not take one for the other.
+     */
+    @Test
+    public void sharedRegisterIsNotIncremented() {
+        JasminResult result = compileReg("reg_alloc/RegAllocIinc.jmm", 0);
+
+        assertEquals("-53\n1\n0\n-2\n", SpecsStrings.normalizeFileContents(result.run()));
+    }
+
+    /**
+     * With or without register allocation the program prints the same
+     */
+    @Test
+    public void sameOutputWithRegisterAllocation() {
+        String filename = "reg_alloc/RegAllocIinc.jmm";
+
+        String original = compileReg(filename, -1).run();
+        String allocated = compileReg(filename, 0).run();
+
+        assertEquals(SpecsStrings.normalizeFileContents(original), SpecsStrings.normalizeFileContents(allocated));
+    }
+}
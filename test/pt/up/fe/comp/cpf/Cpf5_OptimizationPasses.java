@@ -0,0 +1,223 @@
+/**
+ * Copyright 2022 SPeCS.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.comp.cpf;
+
+import org.junit.Test;
+import pt.up.fe.comp.CpUtils;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// One small program per pass of -o, checking both the rewritten code and what the program prints
+public class Cpf5_OptimizationPasses {
+
+    static String getResource(String filename) {
+        return SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/passes/" + filename);
+    }
+
+    static Map<String, String> optimizeConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        return config;
+    }
+
+    // OLLIR of a method after the AST and OLLIR passes, printed from the optimized class
+    static String getOllirMethod(String filename, String methodName) {
+        return getOllirMethod(filename, methodName, optimizeConfig());
+    }
+
+    static String getOllirMethod(String filename, String methodName, Map<String, String> config) {
+        var ollirResult = TestUtils.optimize(getResource(filename), config);
+        String ollirCode = new OllirPrinter(ollirResult.getOllirClass()).getCode();
+
+        int start = ollirCode.indexOf(" " + methodName + "(");
+        assertTrue("Expected to find method '" + methodName + "' in:\n" + ollirCode, start != -1);
+        int end = ollirCode.indexOf("\n\t}", start);
+        return ollirCode.substring(start, end);
+    }
+
+    static JasminResult getJasminResultOpt(String filename) {
+        return TestUtils.backend(getResource(filename), optimizeConfig());
+    }
+
+    static JasminResult getJasminResult(String filename) {
+        return TestUtils.backend(getResource(filename));
+    }
+
+    /**
+     * Locals holding a constant are replaced by it and the operators over literals are folded
+     */
+    @Test
+    public void constantPropagation() {
+        String method = getOllirMethod("ConstProp.jmm", "compute");
+
+        assertTrue(method, method.contains("\"println\", 10.i32"));
+        assertFalse(method, method.contains("*.i32"));
+        CpUtils.runJasmin(getJasminResultOpt("ConstProp.jmm"), "10\n11");
+
+        // Without -o the multiplication is kept
+        String unoptimized = getOllirMethod("ConstProp.jmm", "compute", new HashMap<>());
+        assertTrue(unoptimized, unoptimized.contains("*.i32"));
+    }
+
+    /**
+     * The branch a constant condition never takes, a loop that never runs and an unread local are removed
+     */
+    @Test
+    public void deadCodeElimination() {
+        String method = getOllirMethod("DeadCode.jmm", "choose");
+
+        assertFalse(method, method.contains("99.i32"));
+        assertFalse(method, method.contains("97.i32"));
+        assertFalse(method, method.contains("u.i32"));
+        CpUtils.runJasmin(getJasminResultOpt("DeadCode.jmm"), "3");
+
+        // Without -o the dead branch and loop are kept
+        String unoptimized = getOllirMethod("DeadCode.jmm", "choose", new HashMap<>());
+        assertTrue(unoptimized, unoptimized.contains("99.i32"));
+        assertTrue(unoptimized, unoptimized.contains("97.i32"));
+    }
+
+    /**
+     * k * 3 is computed once, before the loop
+     */
+    @Test
+    public void loopInvariantMotion() {
+        String method = getOllirMethod("LoopInvariant.jmm", "sum");
+
+        int invariant = method.indexOf("k.i32 *.i32 3.i32");
+        assertTrue(method, invariant != -1);
+        assertTrue(method, invariant < method.indexOf("whilebody_0:"));
+        CpUtils.runJasmin(getJasminResultOpt("LoopInvariant.jmm"), "60");
+    }
+
+    /**
+     * The second x * y reuses the variable that holds the first
+     */
+    @Test
+    public void valueNumbering() {
+        String method = getOllirMethod("ValueNumbering.jmm", "repeat");
+
+        assertEquals(method, 1, method.split("\\*\\.i32", -1).length - 1);
+        CpUtils.runJasmin(getJasminResultOpt("ValueNumbering.jmm"), "25");
+    }
+
+    /**
+     * The call of sum on this becomes a jump to its start, so a million calls do not overflow the stack
+     */
+    @Test
+    public void tailRecursion() {
+        String method = getOllirMethod("TailRecursion.jmm", "sum");
+        assertFalse(method, method.contains("invokevirtual"));
+        assertTrue(method, method.contains("goto tailcall;"));
+
+        JasminResult jasminResult = getJasminResultOpt("TailRecursion.jmm");
+        String jasminMethod = CpUtils.getJasminMethod(jasminResult, "sum");
+        assertFalse(jasminMethod, jasminMethod.contains("invokevirtual"));
+        CpUtils.matches(jasminMethod, "goto\\s+tailcall");
+        CpUtils.runJasmin(jasminResult, "1784293664");
+    }
+
+    /**
+     * a && b in a condition is a chain of branches, so a[n] is not read when n is out of bounds
+     */
+    @Test
+    public void shortCircuitConditions() {
+        String method = getOllirMethod("ShortCircuit.jmm", "check");
+
+        assertFalse(method, method.contains("&&.bool"));
+        assertTrue(method, method.contains("if (n.i32 >=.bool temp_0.i32) goto skip_1;"));
+        CpUtils.runJasmin(getJasminResultOpt("ShortCircuit.jmm"), "1\n2");
+    }
+
+    /**
+     * The condition of a while loop is tested once before it and then at the bottom of the body
+     */
+    @Test
+    public void whileRotation() {
+        String method = getOllirMethod("WhileRotation.jmm", "count");
+
+        int guard = method.indexOf("goto endwhile_0;");
+        int body = method.indexOf("whilebody_0:");
+        int condition = method.indexOf("whilecond_0:");
+        assertTrue(method, guard != -1 && guard < body && body < condition);
+        assertTrue(method, method.indexOf("goto whilebody_0;") > condition);
+        CpUtils.runJasmin(getJasminResultOpt("WhileRotation.jmm"), "5\n0");
+    }
+
+    /**
+     * Subtracting a constant that does not fit in a byte is still a single iinc
+     */
+    @Test
+    public void peepholeWideIinc() {
+        JasminResult jasminResult = getJasminResultOpt("Peephole.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "step");
+
+        CpUtils.matches(method, "iinc\\s+1\\s+-300");
+        assertFalse(method, method.contains("isub"));
+        CpUtils.runJasmin(jasminResult, "700\n13\n3\n3");
+    }
+
+    /**
+     * Adding a constant beyond 16 bits is not an iinc, with or without -o, since the increment would wrap
+     */
+    @Test
+    public void iincRange() {
+        for (JasminResult jasminResult : new JasminResult[]{getJasminResult("IincRange.jmm"), getJasminResultOpt("IincRange.jmm")}) {
+            String method = CpUtils.getJasminMethod(jasminResult, "add");
+
+            assertFalse(method, Pattern.compile("iinc\\s+\\d+\\s+32768").matcher(method).find());
+            CpUtils.matches(method, "iinc\\s+\\d+\\s+300");
+            CpUtils.runJasmin(jasminResult, "32868\n33168\n33295");
+        }
+    }
+
+    /**
+     * The temporaries stored and loaded right away stay on the stack
+     */
+    @Test
+    public void peepholeStoreLoad() {
+        String original = CpUtils.getJasminMethod(getJasminResult("Peephole.jmm"), "mulAdd");
+        assertTrue(original, original.contains("istore"));
+
+        JasminResult jasminResult = getJasminResultOpt("Peephole.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "mulAdd");
+
+        assertFalse(method, method.contains("istore"));
+        CpUtils.runJasmin(jasminResult, "700\n13\n3\n3");
+    }
+
+    /**
+     * A boolean only made to be branched on becomes the branch itself
+     */
+    @Test
+    public void peepholeBooleanBranch() {
+        JasminResult jasminResult = getJasminResultOpt("Peephole.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "pick");
+
+        assertFalse(method, method.contains("iconst_"));
+        assertFalse(method, method.contains("ifne"));
+        CpUtils.matches(method, "if_icmplt\\s+\\w+");
+        CpUtils.runJasmin(jasminResult, "700\n13\n3\n3");
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2022 SPeCS.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleParserTest {
+
+    // The parser tries SLL first and only parses again with LL when SLL fails, so both must give the same AST
+    @Test
+    public void sllMatchesLl() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(Paths.get("test"))) {
+            files = paths.filter(path -> path.toString().endsWith(".jmm")).sorted().collect(Collectors.toList());
+        }
+
+        int parsed = 0;
+        for (Path file : files) {
+            String code = SpecsIo.read(file.toFile());
+            Optional<JmmNode> sll;
+            try {
+                sll = SimpleParser.parse(code, "program", PredictionMode.SLL);
+            } catch (ParseCancellationException e) {
+                // The lexer throws on files with lexical errors
+                continue;
+            }
+            if (sll.isEmpty()) {
+                continue;
+            }
+
+            var ll = SimpleParser.parse(code, "program", PredictionMode.LL);
+            assertTrue("LL could not parse " + file, ll.isPresent());
+            assertEquals("Different AST for " + file, ll.get().toTree(), sll.get().toTree());
+            parsed++;
+        }
+
+        assertTrue("No file in test was parsed", parsed > 0);
+    }
+}